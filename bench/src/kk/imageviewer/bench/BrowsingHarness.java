@@ -0,0 +1,360 @@
+package kk.imageviewer.bench;
+
+import kk.imageviewer.FileAccess;
+import kk.imageviewer.ImageManager;
+import kk.imageviewer.LatencyFileAccess;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Replays scripted navigation traces through {@link ImageManager#loadImage} without a screen, the
+ * way the viewer calls it: every request cancels the future of the one before. The requests are
+ * sent on a fixed schedule, not when the previous image arrived, so they come faster than the
+ * viewer lets them (it ignores input until something is shown).
+ * <p>
+ * Every trace gets a new {@link ImageManager} over a corpus of generated JPEGs and reports
+ * <ul>
+ * <li>the time from a request to its final image, median and 99th percentile, over the requests
+ * that got one before they were superseded,</li>
+ * <li>the wasted decodes: decodes and scalings cancelled half way, and finished ones beyond one
+ * per distinct image and frame size requested (prefetched but never looked at, or done again),</li>
+ * <li>the peak heap, the sum of the peaks of the heap memory pools.</li>
+ * </ul>
+ * {@code --save} writes the results to a properties file, {@code --baseline} compares against
+ * such a file and exits with status 1 if a trace got worse by more than {@code --tolerance}, so
+ * scheduler and cache changes can be gated on it. Run with {@code -Djava.awt.headless=true}.
+ * <pre>
+ * java -Djava.awt.headless=true -cp out kk.imageviewer.bench.BrowsingHarness --latency-ms 20 --rate-mib-s 10
+ * </pre>
+ */
+public final class BrowsingHarness {
+    private static final long WAIT_FOR_LAST_SECONDS = 120;
+    /**
+     * Absolute slack on top of the relative tolerance, so noise on small values does not fail the gate.
+     */
+    private static final double SLACK_MS = 20;
+    private static final double SLACK_DECODES = 2;
+    private static final double SLACK_HEAP_MB = 32;
+
+    private final Options options;
+
+    private BrowsingHarness(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        BrowsingHarness harness = new BrowsingHarness(options);
+        harness.prepareCorpus();
+        Properties results = new Properties();
+        for (Trace trace : Trace.all(options.files)) {
+            if (!options.traces.isEmpty() && !options.traces.contains(trace.name))
+                continue;
+            TraceResult result = harness.run(trace);
+            System.out.println(result);
+            result.store(results);
+        }
+        if (options.save != null) {
+            try (OutputStream out = Files.newOutputStream(options.save)) {
+                results.store(out, "BrowsingHarness results");
+            }
+        }
+        if (options.baseline != null && !harness.passesGate(results))
+            System.exit(1);
+    }
+
+    /**
+     * Writes the corpus files that are missing, same content on every run.
+     */
+    private void prepareCorpus() throws IOException {
+        Files.createDirectories(options.corpus);
+        for (int i = 0; i < options.files; i++) {
+            Path file = options.corpus.resolve(String.format("img-%05d.jpg", i));
+            if (Files.exists(file))
+                continue;
+            BufferedImage image = syntheticImage(options.imageWidth, options.imageHeight, i);
+            ImageIO.write(image, "jpg", file.toFile());
+            image.flush();
+        }
+    }
+
+    /**
+     * Gradients with noise, so the JPEGs are about as large and as slow to decode as photos.
+     */
+    private static BufferedImage syntheticImage(int width, int height, int seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        int[] row = new int[width];
+        int phase = random.nextInt(256);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(48) - 24;
+                int r = clamp(x * 255 / width + noise);
+                int g = clamp(y * 255 / height + noise);
+                int b = clamp(((x + y) / 8 + phase & 255) + noise);
+                row[x] = r << 16 | g << 8 | b;
+            }
+            image.getRaster().setDataElements(0, y, width, 1, row);
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private TraceResult run(Trace trace) throws IOException, InterruptedException {
+        FileAccess fileAccess = FileAccess.LOCAL;
+        if (options.latencyMillis > 0 || options.rateMibPerSecond > 0)
+            fileAccess = new LatencyFileAccess(fileAccess, TimeUnit.MILLISECONDS.toNanos(options.latencyMillis),
+                    (long) (options.rateMibPerSecond * 1024 * 1024));
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        Set<Step> distinct = new HashSet<>();
+        long decodes;
+        long cancelledDecodes;
+        try (ImageManager imageManager = new ImageManager(options.corpus, 0, 0, 0, options.fetchThreads,
+                Runtime.getRuntime().availableProcessors(), options.executionMode, fileAccess)) {
+            long start = System.nanoTime();
+            CompletableFuture<ImageManager.ImageResult> previous = null;
+            CompletableFuture<ImageManager.ImageResult> last = null;
+            for (Step step : trace.steps) {
+                long wait = start + TimeUnit.MILLISECONDS.toNanos(step.atMillis) - System.nanoTime();
+                if (wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                if (previous != null)
+                    previous.cancel(false);
+                long requested = System.nanoTime();
+                last = imageManager.loadImage(step.idx, step.width, step.height).future();
+                last.thenRun(() -> {
+                    synchronized (latencies) {
+                        latencies.add(System.nanoTime() - requested);
+                    }
+                });
+                distinct.add(new Step(0, step.idx, step.width, step.height));
+                previous = last;
+            }
+            try {
+                last.get(WAIT_FOR_LAST_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                System.err.println(trace.name + ": last request did not finish: " + e);
+            }
+            decodes = imageManager.getDecodeStats().getItems();
+            cancelledDecodes = imageManager.getCancelledDecodeStats().getItems();
+        }
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+            peakHeap += pool.getPeakUsage().getUsed();
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        sorted.sort(null);
+        long wasted = cancelledDecodes + Math.max(0, decodes - distinct.size());
+        return new TraceResult(trace.name, trace.steps.size(), sorted.size(), percentileMillis(sorted, 0.5),
+                percentileMillis(sorted, 0.99), wasted, decodes + cancelledDecodes, peakHeap / (1024.0 * 1024));
+    }
+
+    /**
+     * Nearest-rank percentile.
+     */
+    private static double percentileMillis(List<Long> sortedNanos, double p) {
+        if (sortedNanos.isEmpty())
+            return Double.NaN;
+        int rank = (int) Math.ceil(p * sortedNanos.size());
+        return sortedNanos.get(Math.max(0, rank - 1)) / 1e6;
+    }
+
+    private boolean passesGate(Properties results) throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(options.baseline)) {
+            baseline.load(in);
+        }
+        boolean passed = true;
+        for (String key : baseline.stringPropertyNames()) {
+            String current = results.getProperty(key);
+            if (current == null)
+                continue;
+            double slack;
+            if (key.endsWith(".p50Ms") || key.endsWith(".p99Ms"))
+                slack = SLACK_MS;
+            else if (key.endsWith(".wastedDecodes"))
+                slack = SLACK_DECODES;
+            else if (key.endsWith(".peakHeapMb"))
+                slack = SLACK_HEAP_MB;
+            else
+                continue;
+            double before = Double.parseDouble(baseline.getProperty(key));
+            double now = Double.parseDouble(current);
+            if (now > before * (1 + options.tolerance) + slack) {
+                System.out.printf("REGRESSION %s: %.1f, baseline %.1f%n", key, now, before);
+                passed = false;
+            }
+        }
+        System.out.println(passed ? "gate passed" : "gate failed");
+        return passed;
+    }
+
+    /**
+     * One request, sent {@code atMillis} after the start of the trace.
+     */
+    private record Step(long atMillis, int idx, int width, int height) {
+    }
+
+    private record Trace(String name, List<Step> steps) {
+        static List<Trace> all(int files) {
+            return List.of(steady(files), bursts(files), backAndForth(files), resizeStorm(files));
+        }
+
+        /**
+         * Forward at a steady pace, a little faster than an image decodes.
+         */
+        static Trace steady(int files) {
+            List<Step> steps = new ArrayList<>();
+            for (int i = 0; i < Math.min(files, 60); i++)
+                steps.add(new Step(i * 250L, i, 1000, 800));
+            return new Trace("steady", steps);
+        }
+
+        /**
+         * Quick runs of the scroll wheel, then a pause to look at the image.
+         */
+        static Trace bursts(int files) {
+            List<Step> steps = new ArrayList<>();
+            long time = 0;
+            int idx = 0;
+            for (int burst = 0; burst < 6 && idx < files; burst++) {
+                for (int i = 0; i < 8 && idx < files; i++, idx++) {
+                    steps.add(new Step(time, idx, 1000, 800));
+                    time += 40;
+                }
+                time += 1500;
+            }
+            return new Trace("burst", steps);
+        }
+
+        /**
+         * Five forward, three back, comparing neighbours.
+         */
+        static Trace backAndForth(int files) {
+            List<Step> steps = new ArrayList<>();
+            long time = 0;
+            int idx = 0;
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 5 && idx < files - 1; i++, time += 200)
+                    steps.add(new Step(time, ++idx, 1000, 800));
+                for (int i = 0; i < 3 && idx > 0; i++, time += 200)
+                    steps.add(new Step(time, --idx, 1000, 800));
+            }
+            return new Trace("back-and-forth", steps);
+        }
+
+        /**
+         * Window dragged bigger on a few images, a new frame size every 30 ms.
+         */
+        static Trace resizeStorm(int files) {
+            List<Step> steps = new ArrayList<>();
+            long time = 0;
+            for (int idx = 0; idx < Math.min(files, 5); idx++) {
+                for (int i = 0; i < 15; i++, time += 30)
+                    steps.add(new Step(time, idx, 800 + 20 * i, 600 + 15 * i));
+                time += 1000;
+            }
+            return new Trace("resize-storm", steps);
+        }
+    }
+
+    private record TraceResult(String name, int requests, int shown, double p50Millis, double p99Millis,
+                               long wastedDecodes, long decodes, double peakHeapMb) {
+        void store(Properties properties) {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("p50Ms", p50Millis);
+            values.put("p99Ms", p99Millis);
+            values.put("wastedDecodes", (double) wastedDecodes);
+            values.put("peakHeapMb", peakHeapMb);
+            values.forEach((key, value) -> properties.setProperty(name + "." + key, String.format("%.1f", value)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests, %d shown, p50 %.0f ms, p99 %.0f ms, wasted decodes %d of %d, peak heap %.0f MB",
+                    name, requests, shown, p50Millis, p99Millis, wastedDecodes, decodes, peakHeapMb);
+        }
+    }
+
+    private record Options(Path corpus, int files, int imageWidth, int imageHeight, long latencyMillis,
+                           double rateMibPerSecond, int fetchThreads, ImageManager.ExecutionMode executionMode,
+                           Set<String> traces, Path save, Path baseline, double tolerance) {
+        static Options parse(String[] args) {
+            Path corpus = Path.of(System.getProperty("java.io.tmpdir"), "j-image-viewer-corpus");
+            int files = 100;
+            int imageWidth = 4000;
+            int imageHeight = 3000;
+            long latencyMillis = 0;
+            double rateMibPerSecond = 0;
+            int fetchThreads = 4;
+            ImageManager.ExecutionMode executionMode = ImageManager.ExecutionMode.PLATFORM;
+            Set<String> traces = new HashSet<>();
+            Path save = null;
+            Path baseline = null;
+            double tolerance = 0.2;
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--corpus" -> corpus = Path.of(value);
+                    case "--files" -> files = Integer.parseInt(value);
+                    case "--image-size" -> {
+                        String[] size = value.split("x");
+                        imageWidth = Integer.parseInt(size[0]);
+                        imageHeight = Integer.parseInt(size[1]);
+                    }
+                    case "--latency-ms" -> latencyMillis = Long.parseLong(value);
+                    case "--rate-mib-s" -> rateMibPerSecond = Double.parseDouble(value);
+                    case "--fetch-threads" -> fetchThreads = Integer.parseInt(value);
+                    case "--mode" -> executionMode = ImageManager.ExecutionMode.valueOf(value.toUpperCase());
+                    case "--trace" -> traces.add(value);
+                    case "--save" -> save = Path.of(value);
+                    case "--baseline" -> baseline = Path.of(value);
+                    case "--tolerance" -> tolerance = Double.parseDouble(value);
+                    default -> throw new IllegalArgumentException("unknown option " + args[i] + ", options: "
+                            + "--corpus DIR --files N --image-size WxH --latency-ms MS --rate-mib-s MIB_PER_S "
+                            + "--fetch-threads N --mode platform|virtual --trace NAME --save FILE --baseline FILE "
+                            + "--tolerance FRACTION");
+                }
+                i++;
+            }
+            return new Options(corpus, files, imageWidth, imageHeight, latencyMillis, rateMibPerSecond, fetchThreads,
+                    executionMode, traces, save, baseline, tolerance);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr.bench;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.concurrent.TimeUnit;
+
+import org.imgscalr.Scalr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Scalr#apply(BufferedImage, BufferedImageOp...)} with chains of the
+ * predefined ops, on their own and after a resize (where point ops are fused
+ * into the scaling pass).
+ * <p/>
+ * A chain is the names of the <code>Scalr.OP_</code> constants joined by
+ * <code>+</code>.
+ *
+ * @since 4.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-Djava.awt.headless=true",
+        "--add-modules", "jdk.incubator.vector"})
+public class ApplyBenchmark {
+    @Param({"BRIGHTER", "BRIGHTER+DARKER", "GRAYSCALE", "ANTIALIAS",
+            "ANTIALIAS+BRIGHTER+GRAYSCALE"})
+    public String chain;
+
+    @Param({BenchImages.MEGAPIXELS_1, BenchImages.MEGAPIXELS_12,
+            BenchImages.MEGAPIXELS_50, BenchImages.MEGAPIXELS_100})
+    public String megapixels;
+
+    @Param({BenchImages.TYPE_3BYTE_BGR, BenchImages.TYPE_INT_RGB,
+            BenchImages.TYPE_INT_ARGB, BenchImages.TYPE_BYTE_INDEXED})
+    public String type;
+
+    private BufferedImage src;
+    private BufferedImageOp[] ops;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        src = BenchImages.create(megapixels, type);
+        ops = ops(chain);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        src.flush();
+    }
+
+    @Benchmark
+    public BufferedImage apply() {
+        return Scalr.apply(src, ops);
+    }
+
+    @Benchmark
+    public BufferedImage resizeWithOps() {
+        return Scalr.resize(src, Scalr.Method.BALANCED, 1920, 1080, ops);
+    }
+
+    private static BufferedImageOp[] ops(String chain)
+            throws IllegalArgumentException {
+        String[] names = chain.split("\\+");
+        BufferedImageOp[] ops = new BufferedImageOp[names.length];
+        for (int i = 0; i < names.length; i++) {
+            switch (names[i]) {
+                case "ANTIALIAS":
+                    ops[i] = Scalr.OP_ANTIALIAS;
+                    break;
+                case "BRIGHTER":
+                    ops[i] = Scalr.OP_BRIGHTER;
+                    break;
+                case "DARKER":
+                    ops[i] = Scalr.OP_DARKER;
+                    break;
+                case "GRAYSCALE":
+                    ops[i] = Scalr.OP_GRAYSCALE;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown op ["
+                            + names[i] + "]");
+            }
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Source images for the benchmarks, generated rather than read so the runs do
+ * not depend on files and decoding time stays out of the measurements.
+ * <p/>
+ * The content is a smooth gradient with noise on top, roughly what scaling
+ * sees in a photo: no large flat areas (which some loops short-cut) and no
+ * pure noise (which no interpolation handles like a real image).
+ *
+ * @since 4.3
+ */
+final class BenchImages {
+    /**
+     * The source sizes benchmarked by default, in megapixels. The images have
+     * an aspect ratio of 4:3.
+     */
+    static final String MEGAPIXELS_1 = "1";
+    static final String MEGAPIXELS_12 = "12";
+    static final String MEGAPIXELS_50 = "50";
+    static final String MEGAPIXELS_100 = "100";
+
+    /**
+     * The source types benchmarked: what ImageIO returns for a JPEG, the two
+     * types imgscalr works in and an indexed (GIF, 8-bit PNG) image.
+     */
+    static final String TYPE_3BYTE_BGR = "3BYTE_BGR";
+    static final String TYPE_INT_RGB = "INT_RGB";
+    static final String TYPE_INT_ARGB = "INT_ARGB";
+    static final String TYPE_BYTE_INDEXED = "BYTE_INDEXED";
+
+    private BenchImages() {
+    }
+
+    /**
+     * @return a new image of about <code>megapixels</code> million pixels of
+     *         the given type (one of the <code>TYPE_</code> constants)
+     *
+     * @throws IllegalArgumentException
+     *             if the type is unknown.
+     */
+    static BufferedImage create(String megapixels, String type)
+            throws IllegalArgumentException {
+        double pixels = Double.parseDouble(megapixels) * 1_000_000;
+        int width = (int) Math.round(Math.sqrt(pixels * 4 / 3));
+        int height = (int) Math.round(width * 3 / 4.0);
+        return create(width, height, type);
+    }
+
+    /**
+     * @return a new image of the given size and type (one of the
+     *         <code>TYPE_</code> constants)
+     *
+     * @throws IllegalArgumentException
+     *             if the type is unknown.
+     */
+    static BufferedImage create(int width, int height, String type)
+            throws IllegalArgumentException {
+        int imageType;
+        switch (type) {
+            case TYPE_3BYTE_BGR:
+                imageType = BufferedImage.TYPE_3BYTE_BGR;
+                break;
+            case TYPE_INT_RGB:
+                imageType = BufferedImage.TYPE_INT_RGB;
+                break;
+            case TYPE_INT_ARGB:
+                imageType = BufferedImage.TYPE_INT_ARGB;
+                break;
+            case TYPE_BYTE_INDEXED:
+                imageType = BufferedImage.TYPE_BYTE_INDEXED;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown image type ["
+                        + type + "]");
+        }
+
+        BufferedImage content = content(width, height,
+                imageType == BufferedImage.TYPE_INT_ARGB);
+        if (imageType == content.getType())
+            return content;
+
+        // Let Java2D convert, indexed images get its default palette.
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(content, 0, 0, null);
+        g.dispose();
+        content.flush();
+        return image;
+    }
+
+    private static BufferedImage content(int width, int height, boolean alpha) {
+        BufferedImage image = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width * 31L + height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int g = y * 255 / height;
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int b = (r + g) / 2;
+                int noise = random.nextInt(32) - 16;
+                int a = alpha ? 128 + ((x ^ y) & 127) : 255;
+                row[x] = (a << 24) | (clamp(r + noise) << 16)
+                        | (clamp(g + noise) << 8) | clamp(b + noise);
+            }
+            image.getRaster().setDataElements(0, y, width, 1, row);
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
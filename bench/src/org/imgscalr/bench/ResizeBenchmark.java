@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.imgscalr.Scalr;
+import org.imgscalr.Scalr.Method;
+import org.imgscalr.Scalr.Mode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Scalr#resize(BufferedImage, Method, Mode, int, int, java.awt.image.BufferedImageOp...)}
+ * for every {@link Method} and {@link Mode}, down to the size the viewer
+ * typically shows, 1920x1080.
+ * <p/>
+ * The full matrix is large, narrow it with <code>-p</code>, e.g.
+ * <code>-p method=QUALITY,SEPARABLE -p megapixels=12</code>.
+ *
+ * @since 4.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-Djava.awt.headless=true",
+        "--add-modules", "jdk.incubator.vector"})
+public class ResizeBenchmark {
+    @Param({"AUTOMATIC", "SPEED", "BALANCED", "QUALITY", "ULTRA_QUALITY",
+            "SEPARABLE"})
+    public String method;
+
+    @Param({"AUTOMATIC", "FIT_EXACT", "BEST_FIT_BOTH", "FIT_TO_WIDTH",
+            "FIT_TO_HEIGHT"})
+    public String mode;
+
+    @Param({BenchImages.MEGAPIXELS_1, BenchImages.MEGAPIXELS_12,
+            BenchImages.MEGAPIXELS_50, BenchImages.MEGAPIXELS_100})
+    public String megapixels;
+
+    @Param({BenchImages.TYPE_3BYTE_BGR, BenchImages.TYPE_INT_RGB,
+            BenchImages.TYPE_INT_ARGB, BenchImages.TYPE_BYTE_INDEXED})
+    public String type;
+
+    private BufferedImage src;
+    private Method scalingMethod;
+    private Mode resizeMode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        src = BenchImages.create(megapixels, type);
+        scalingMethod = Method.valueOf(method);
+        resizeMode = Mode.valueOf(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        src.flush();
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return Scalr.resize(src, scalingMethod, resizeMode, 1920, 1080);
+    }
+}
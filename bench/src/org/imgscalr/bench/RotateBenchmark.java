@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.imgscalr.Scalr;
+import org.imgscalr.Scalr.Rotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Scalr#rotate(BufferedImage, Rotation, java.awt.image.BufferedImageOp...)}
+ * for every {@link Rotation}, and {@link Scalr#crop} of the centre quarter of
+ * the image with and without an op.
+ *
+ * @since 4.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-Djava.awt.headless=true",
+        "--add-modules", "jdk.incubator.vector"})
+public class RotateBenchmark {
+    @Param({"CW_90", "CW_180", "CW_270", "FLIP_HORZ", "FLIP_VERT"})
+    public String rotation;
+
+    @Param({BenchImages.MEGAPIXELS_1, BenchImages.MEGAPIXELS_12,
+            BenchImages.MEGAPIXELS_50, BenchImages.MEGAPIXELS_100})
+    public String megapixels;
+
+    @Param({BenchImages.TYPE_3BYTE_BGR, BenchImages.TYPE_INT_RGB,
+            BenchImages.TYPE_INT_ARGB, BenchImages.TYPE_BYTE_INDEXED})
+    public String type;
+
+    private BufferedImage src;
+    private Rotation rot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        src = BenchImages.create(megapixels, type);
+        rot = Rotation.valueOf(rotation);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        src.flush();
+    }
+
+    @Benchmark
+    public BufferedImage rotate() {
+        return Scalr.rotate(src, rot);
+    }
+
+    /*
+     * The crops do not depend on the rotation; run them with a single one,
+     * e.g. -p rotation=CW_90.
+     */
+
+    @Benchmark
+    public BufferedImage crop() {
+        return Scalr.crop(src, src.getWidth() / 4, src.getHeight() / 4,
+                src.getWidth() / 2, src.getHeight() / 2);
+    }
+
+    @Benchmark
+    public BufferedImage cropWithOp() {
+        return Scalr.crop(src, src.getWidth() / 4, src.getHeight() / 4,
+                src.getWidth() / 2, src.getHeight() / 2, Scalr.OP_BRIGHTER);
+    }
+}
@@ -0,0 +1,250 @@
+package kk.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache keyed by directory index that keeps the summed weight of its entries under a byte budget.
+ * <p>
+ * When the budget is exceeded, entries furthest from the current index go first and among equally
+ * distant ones the least recently used. Entries weighing nothing (e.g. still being loaded) are never
+ * evicted, neither is the entry at the current index.
+ * <p>
+ * Thread-safe without a global lock: entries live in a {@link ConcurrentHashMap}, the used bytes
+ * are kept with atomic updates, and only one thread at a time runs an eviction pass.
+ */
+class ByteBudgetCache<V> {
+
+    private static final long RETIRED = -1;
+
+    private final Map<Integer, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ToLongFunction<V> weigher;
+    private final long budget;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    ByteBudgetCache(long budget, ToLongFunction<V> weigher) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("budget must be > 0");
+        this.budget = budget;
+        this.weigher = weigher;
+    }
+
+    static long imageBytes(BufferedImage img) {
+        if (img == null)
+            return 0;
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    V get(int idx) {
+        Entry<V> entry = entries.get(idx);
+        if (entry == null)
+            return null;
+        entry.lastAccess = clock.incrementAndGet();
+        return entry.value;
+    }
+
+    V put(int idx, V value) {
+        Entry<V> previous = entries.put(idx, admit(value));
+        if (previous == null)
+            return null;
+        retire(previous);
+        return previous.value;
+    }
+
+    /**
+     * Atomically replaces the value at {@code idx} with the result of {@code remapping}, which gets
+     * the current value or {@code null}. Returning the current value keeps the entry, returning
+     * {@code null} removes it.
+     *
+     * @return the value at {@code idx} afterwards
+     */
+    V compute(int idx, UnaryOperator<V> remapping) {
+        Entry<V> entry = entries.compute(idx, (key, current) -> {
+            V currentValue = current == null ? null : current.value;
+            V value = remapping.apply(currentValue);
+            if (value == currentValue)
+                return current;
+            if (current != null)
+                retire(current);
+            return value == null ? null : admit(value);
+        });
+        if (entry == null)
+            return null;
+        entry.lastAccess = clock.incrementAndGet();
+        return entry.value;
+    }
+
+    V remove(int idx) {
+        Entry<V> entry = entries.remove(idx);
+        if (entry == null)
+            return null;
+        retire(entry);
+        return entry.value;
+    }
+
+    /**
+     * Removes the entry at {@code idx} only if it still holds {@code value}.
+     */
+    boolean remove(int idx, V value) {
+        Entry<V> entry = entries.get(idx);
+        if (entry == null || entry.value != value || !entries.remove(idx, entry))
+            return false;
+        retire(entry);
+        return true;
+    }
+
+    /**
+     * Removes all entries {@code filter} accepts.
+     *
+     * @return the removed values
+     */
+    List<V> removeIf(BiPredicate<Integer, V> filter) {
+        List<V> removed = new ArrayList<>();
+        for (Map.Entry<Integer, Entry<V>> e : entries.entrySet()) {
+            Entry<V> entry = e.getValue();
+            if (filter.test(e.getKey(), entry.value) && entries.remove(e.getKey(), entry)) {
+                retire(entry);
+                removed.add(entry.value);
+            }
+        }
+        return removed;
+    }
+
+    List<V> clear() {
+        return removeIf((idx, value) -> true);
+    }
+
+    /**
+     * Moves the entries to new indices after the directory index shifted, the entry at {@code idx}
+     * to {@code remap.applyAsInt(idx)}, and removes the ones mapped to a negative index. Entries
+     * put concurrently at an index being moved may be replaced, and entries replaced concurrently
+     * are not moved.
+     *
+     * @return the removed values
+     */
+    List<V> remap(IntUnaryOperator remap) {
+        List<V> removed = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            List<Map.Entry<Integer, Entry<V>>> moved = new ArrayList<>();
+            for (Map.Entry<Integer, Entry<V>> e : entries.entrySet()) {
+                int idx = e.getKey();
+                if (remap.applyAsInt(idx) != idx && entries.remove(idx, e.getValue()))
+                    moved.add(Map.entry(idx, e.getValue()));
+            }
+            for (Map.Entry<Integer, Entry<V>> e : moved) {
+                int idx = remap.applyAsInt(e.getKey());
+                Entry<V> replaced = idx < 0 ? e.getValue() : entries.put(idx, e.getValue());
+                if (replaced != null) {
+                    retire(replaced);
+                    removed.add(replaced.value);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Recomputes the weight of the entry at {@code idx} if it still holds {@code value}, needed
+     * when the value grew after insertion.
+     */
+    void reweigh(int idx, V value) {
+        Entry<V> entry = entries.get(idx);
+        if (entry == null || entry.value != value)
+            return;
+        long weight = weigher.applyAsLong(value);
+        while (true) {
+            long current = entry.weight.get();
+            if (current == RETIRED)
+                return;
+            if (entry.weight.compareAndSet(current, weight)) {
+                usedBytes.addAndGet(weight - current);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until the cache fits into its budget again. If another thread is already
+     * evicting, returns right away and leaves the work to it.
+     *
+     * @return evicted values, furthest from {@code currentIdx} first
+     */
+    List<V> evict(int currentIdx) {
+        if (usedBytes.get() <= budget || !evictionLock.tryLock())
+            return List.of();
+        try {
+            List<Map.Entry<Integer, Entry<V>>> candidates = new ArrayList<>();
+            for (Map.Entry<Integer, Entry<V>> e : entries.entrySet()) {
+                if (e.getKey() != currentIdx && e.getValue().weight.get() > 0)
+                    candidates.add(Map.entry(e.getKey(), e.getValue()));
+            }
+            candidates.sort(Comparator.comparingInt((Map.Entry<Integer, Entry<V>> e) -> Math.abs(e.getKey() - currentIdx)).reversed()
+                    .thenComparingLong(e -> e.getValue().lastAccess));
+            List<V> evicted = new ArrayList<>();
+            for (Map.Entry<Integer, Entry<V>> candidate : candidates) {
+                if (usedBytes.get() <= budget)
+                    break;
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    retire(candidate.getValue());
+                    evicted.add(candidate.getValue().value);
+                }
+            }
+            return evicted;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long usedBytes() {
+        return usedBytes.get();
+    }
+
+    long budget() {
+        return budget;
+    }
+
+    private Entry<V> admit(V value) {
+        Entry<V> entry = new Entry<>(value, weigher.applyAsLong(value), clock.incrementAndGet());
+        usedBytes.addAndGet(entry.weight.get());
+        return entry;
+    }
+
+    private void retire(Entry<V> entry) {
+        long weight = entry.weight.getAndSet(RETIRED);
+        if (weight > 0)
+            usedBytes.addAndGet(-weight);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final AtomicLong weight;
+        volatile long lastAccess;
+
+        Entry(V value, long weight, long lastAccess) {
+            this.value = value;
+            this.weight = new AtomicLong(weight);
+            this.lastAccess = lastAccess;
+        }
+    }
+}
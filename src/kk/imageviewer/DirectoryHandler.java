@@ -1,26 +1,157 @@
 package kk.imageviewer;
 
+import java.awt.Dimension;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Logger;
 import java.util.stream.StreamSupport;
 
-public class DirectoryHandler {
+/**
+ * Sorted index of the supported files in a directory.
+ * <p>
+ * The directory is listed once, after that the index is kept up to date one file at a time: by
+ * {@link #delete} and, once {@link #watch()} is called, by the events of a {@link WatchService}.
+ * Every change is a binary search and a shift of the list, never a new listing, and is reported
+ * to the {@link IndexListener}s so indices held elsewhere can follow.
+ * <p>
+ * In streaming mode the directory is listed on a background thread instead, and the files are
+ * merged into the index in batches as they are found, so the first image can be shown (and
+ * prefetching start) long before a large directory is listed completely. Every batch is an index
+ * change like any other.
+ * <p>
+ * With a snapshot file (see {@link IndexSnapshot}) a streaming handler opens with the index of the
+ * last run instead of an empty one, and the listing reconciles it: new files are merged in, files
+ * not found any more are removed once the listing is complete. Then the sizes and modification
+ * times of all files are read, and the image sizes of the ones that changed are forgotten. The
+ * image sizes are filled in by {@link #recordImageSize} when images are decoded, never by reading
+ * files just for that. The snapshot is written after reconciling and on {@link #close()}.
+ * <p>
+ * Network file systems like sshfs only report the changes made through the local mount, not those
+ * made on the remote side.
+ */
+public class DirectoryHandler implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger("DirectoryHandler");
+    /**
+     * Batches of a streamed listing start with a single file and double up to this size, so the
+     * first file is published at once and the cost of merging stays low later.
+     */
+    private static final int MAX_LIST_BATCH = 4096;
+    private static final long LIST_FLUSH_NANOS = 200_000_000L;
+
     private final Set<String> supportedFiles = new HashSet<>();
     private final Path path;
-    private Path[] files;
+    private final FileAccess fileAccess;
+    private final List<Path> files = new ArrayList<>();
+    private final List<IndexListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Changes made but not reported yet, in order; guarded by {@code this}. They are reported by
+     * {@link #fire()} under {@link #fireLock} only, so they reach the listeners in order too.
+     */
+    private final ArrayDeque<IntUnaryOperator> pendingChanges = new ArrayDeque<>();
+    private final Object fireLock = new Object();
+    private final Path snapshotFile;
+    private final Map<String, IndexSnapshot.Entry> metadata = new ConcurrentHashMap<>();
+    /**
+     * Files of the snapshot not seen by the listing or a watch event yet, the ones left when the
+     * listing is complete are gone; guarded by {@code this}.
+     */
+    private final Set<Path> unconfirmed = new HashSet<>();
+    private volatile boolean metadataChanged = false;
+    private WatchService watchService;
+    private volatile boolean closed = false;
 
     {
         supportedFiles.add("jpeg");
         supportedFiles.add("jpg");
     }
 
+    /**
+     * Told about every change of the index, in order, on the thread making the change or on one
+     * making a later change, without the handler locked. The index may have changed further by
+     * then, those changes are reported next.
+     */
+    public interface IndexListener {
+        /**
+         * @param remap maps every index before the change to the index of the same file after it,
+         *              or to {@code -1} if the file is gone
+         */
+        void indexChanged(IntUnaryOperator remap);
+    }
+
     public DirectoryHandler(Path path) throws IOException {
+        this(path, FileAccess.LOCAL);
+    }
+
+    public DirectoryHandler(Path path, FileAccess fileAccess) throws IOException {
+        this(path, fileAccess, false);
+    }
+
+    /**
+     * @param streaming whether to return with an empty index right away and list the directory on
+     *                  a daemon thread, see the class description
+     */
+    public DirectoryHandler(Path path, FileAccess fileAccess, boolean streaming) throws IOException {
+        this(path, fileAccess, streaming, null);
+    }
+
+    /**
+     * @param snapshotFile where the index is kept between runs, see the class description; only
+     *                     used when {@code streaming}, may be {@code null}
+     */
+    public DirectoryHandler(Path path, FileAccess fileAccess, boolean streaming, Path snapshotFile)
+            throws IOException {
         this.path = path;
-        loadFiles();
+        this.fileAccess = fileAccess;
+        this.snapshotFile = streaming ? snapshotFile : null;
+        if (streaming) {
+            if (this.snapshotFile != null)
+                loadSnapshot();
+            startListing();
+        } else {
+            loadFiles();
+            fire();
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotFile))
+            return;
+        long start = System.nanoTime();
+        try {
+            List<IndexSnapshot.Entry> entries = IndexSnapshot.read(snapshotFile);
+            for (IndexSnapshot.Entry entry : entries) {
+                files.add(path.resolve(entry.name()));
+                metadata.put(entry.name(), entry);
+            }
+            Collections.sort(files);
+            unconfirmed.addAll(files);
+            LOG.info("opened " + files.size() + " files of " + path + " from " + snapshotFile + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (IOException e) {
+            LOG.warning("ignoring the index snapshot: " + e);
+            files.clear();
+            metadata.clear();
+            unconfirmed.clear();
+        }
     }
 
     private boolean filterFileName(Path file) {
@@ -28,29 +159,389 @@ public class DirectoryHandler {
         return supportedFiles.contains(fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase());
     }
 
-    private void loadFiles() throws IOException {
-        try (var directoryStream = Files.newDirectoryStream(path, this::filterFileName)) {
-            files = StreamSupport.stream(directoryStream.spliterator(), false).toArray(Path[]::new);
+    private synchronized void loadFiles() throws IOException {
+        Path[] listed;
+        try (var directoryStream = fileAccess.list(path, this::filterFileName)) {
+            listed = StreamSupport.stream(directoryStream.spliterator(), false).toArray(Path[]::new);
+        }
+        List<Path> previous = new ArrayList<>(files);
+        files.clear();
+        Collections.addAll(files, listed);
+        unconfirmed.clear();
+        Collections.sort(files);
+        if (!previous.isEmpty())
+            changed(i -> i < 0 || i >= previous.size() ? -1 : Math.max(-1, Collections.binarySearch(files, previous.get(i))));
+    }
+
+    /**
+     * Opens the directory here, so a missing one fails the constructor, and iterates it on a new
+     * thread.
+     */
+    private void startListing() throws IOException {
+        DirectoryStream<Path> directoryStream = fileAccess.list(path, this::filterFileName);
+        Thread lister = new Thread(() -> list(directoryStream), "DirectoryLister");
+        lister.setDaemon(true);
+        lister.start();
+    }
+
+    private void list(DirectoryStream<Path> directoryStream) {
+        long start = System.nanoTime();
+        long flushed = start;
+        int batchSize = 1;
+        List<Path> batch = new ArrayList<>();
+        try (directoryStream) {
+            for (Path file : directoryStream) {
+                if (closed)
+                    return;
+                batch.add(file);
+                if (batch.size() >= batchSize || System.nanoTime() - flushed > LIST_FLUSH_NANOS) {
+                    insertAll(batch);
+                    fire();
+                    batch.clear();
+                    flushed = System.nanoTime();
+                    batchSize = Math.min(MAX_LIST_BATCH, 2 * batchSize);
+                }
+            }
+            insertAll(batch);
+            fire();
+            LOG.info("listed " + getN() + " files in " + path + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (IOException | DirectoryIteratorException e) {
+            LOG.warning("listing " + path + " failed after " + getN() + " files: " + e);
+            return;
+        }
+        if (snapshotFile != null) {
+            removeUnconfirmed();
+            fire();
+            refreshMetadata();
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * Removes the files of the snapshot the listing did not find, in one index change. Files added
+     * by watch events meanwhile stay, whether the listing got to them or not.
+     */
+    private synchronized void removeUnconfirmed() {
+        if (unconfirmed.isEmpty())
+            return;
+        int[] newIndex = new int[files.size()];
+        List<Path> retained = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (!unconfirmed.contains(file)) {
+                newIndex[i] = retained.size();
+                retained.add(file);
+            } else {
+                newIndex[i] = -1;
+                metadata.remove(file.getFileName().toString());
+            }
+        }
+        unconfirmed.clear();
+        if (retained.size() == files.size())
+            return;
+        LOG.info((files.size() - retained.size()) + " files of the snapshot are gone");
+        metadataChanged = true;
+        files.clear();
+        files.addAll(retained);
+        changed(i -> i < 0 || i >= newIndex.length ? -1 : newIndex[i]);
+    }
+
+    /**
+     * Reads the size and modification time of every file, forgetting the image size of the ones
+     * that changed since the snapshot.
+     */
+    private void refreshMetadata() {
+        List<Path> current;
+        synchronized (this) {
+            current = new ArrayList<>(files);
+        }
+        int[] changed = {0};
+        for (Path file : current) {
+            if (closed)
+                return;
+            BasicFileAttributes attributes;
+            try {
+                attributes = fileAccess.attributes(file);
+            } catch (IOException e) {
+                continue;
+            }
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            metadata.compute(file.getFileName().toString(), (name, entry) -> {
+                if (entry != null && entry.unchanged(size, modified))
+                    return entry.asChecked();
+                metadataChanged = true;
+                changed[0]++;
+                // an image size recorded before the file was looked at is one of the current file
+                boolean recorded = entry != null && entry.size() == IndexSnapshot.UNKNOWN;
+                return new IndexSnapshot.Entry(name, size, modified, recorded ? entry.width() : IndexSnapshot.UNKNOWN,
+                        recorded ? entry.height() : IndexSnapshot.UNKNOWN, true);
+            });
+        }
+        LOG.info(changed[0] + " of " + current.size() + " files in " + path + " new or changed");
+    }
+
+    private synchronized void saveSnapshot() {
+        if (snapshotFile == null || !metadataChanged)
+            return;
+        List<IndexSnapshot.Entry> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            entries.add(metadata.getOrDefault(name, IndexSnapshot.Entry.unknown(name)));
+        }
+        try {
+            IndexSnapshot.write(snapshotFile, entries);
+            metadataChanged = false;
+        } catch (IOException e) {
+            LOG.warning("writing the index snapshot " + snapshotFile + " failed: " + e);
         }
-        Arrays.sort(files);
     }
 
-    public int getN() {
-        return files.length;
+    /**
+     * Keeps the size of the image in {@code file}, learned by decoding it, for the snapshot.
+     */
+    void recordImageSize(Path file, int width, int height) {
+        if (snapshotFile == null)
+            return;
+        metadata.compute(file.getFileName().toString(), (name, entry) -> {
+            // until the file was looked at, the size and time from the snapshot may be outdated
+            if (entry == null || !entry.checked())
+                entry = IndexSnapshot.Entry.unknown(name);
+            else if (entry.width() == width && entry.height() == height)
+                return entry;
+            metadataChanged = true;
+            return entry.withImageSize(width, height);
+        });
     }
 
-    public Path getFile(int n) {
-        if (n < 0 || n >= files.length)
+    /**
+     * @return the size of the image in {@code file} if it is known without reading the file,
+     *         otherwise {@code null}
+     */
+    public Dimension getImageSize(Path file) {
+        IndexSnapshot.Entry entry = metadata.get(file.getFileName().toString());
+        return entry == null || !entry.hasImageSize() ? null : new Dimension(entry.width(), entry.height());
+    }
+
+    public void addIndexListener(IndexListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized int getN() {
+        return files.size();
+    }
+
+    public synchronized Path getFile(int n) {
+        if (n < 0 || n >= files.size())
             return null;
-        return files[n];
+        return files.get(n);
+    }
+
+    /**
+     * @return the index of the file named {@code fileName}, or {@code -1} if it is not in the index
+     */
+    public synchronized int indexOf(String fileName) {
+        return Math.max(-1, Collections.binarySearch(files, path.resolve(fileName)));
     }
 
     public void delete(int idx) {
+        Path file;
+        synchronized (this) {
+            file = files.get(idx);
+        }
+        delete(file);
+    }
+
+    /**
+     * Deletes the file of the given name, wherever it is in the index now.
+     */
+    public void delete(String fileName) {
+        if (indexOf(fileName) < 0)
+            throw new IllegalArgumentException(fileName + " is not in " + path);
+        delete(path.resolve(fileName));
+    }
+
+    /**
+     * Deletes {@code file} without holding the lock, a slow file system must not stall the readers
+     * of the index, then removes it from wherever it is in the index by then.
+     */
+    private void delete(Path file) {
         try {
-            Files.delete(files[idx]);
-            loadFiles();
+            fileAccess.delete(file);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        removed(file);
+        fire();
+    }
+
+    /**
+     * Starts following the changes made to the directory by other programs on a daemon thread,
+     * until {@link #close()}. Without a watch service for the file system the index just stays as
+     * it is.
+     */
+    public synchronized void watch() {
+        if (watchService != null)
+            return;
+        try {
+            watchService = path.getFileSystem().newWatchService();
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warning("not watching " + path + ": " + e);
+            return;
+        }
+        WatchService service = watchService;
+        Thread watcher = new Thread(() -> processEvents(service), "DirectoryWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        saveSnapshot();
+        if (watchService == null)
+            return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOG.warning("closing the watch service of " + path + " failed: " + e);
+        }
+    }
+
+    private void processEvents(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    LOG.info("missed changes in " + path + ", listing it again");
+                    try {
+                        loadFiles();
+                    } catch (IOException e) {
+                        LOG.warning("listing " + path + " failed: " + e);
+                    }
+                    fire();
+                    continue;
+                }
+                Path file = path.resolve((Path) event.context());
+                if (!filterFileName(file))
+                    continue;
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                    added(file);
+                else
+                    removed(file);
+                fire();
+            }
+            if (!key.reset()) {
+                LOG.warning(path + " is no longer watched");
+                return;
+            }
+        }
+    }
+
+    private synchronized void added(Path file) {
+        unconfirmed.remove(file);
+        int pos = Collections.binarySearch(files, file);
+        if (pos >= 0)
+            return;
+        int at = -pos - 1;
+        files.add(at, file);
+        changed(i -> i >= at ? i + 1 : i);
+    }
+
+    /**
+     * Merges the files not in the index yet into it, in one pass and one index change.
+     */
+    private synchronized void insertAll(List<Path> batch) {
+        for (Path file : batch)
+            unconfirmed.remove(file);
+        List<Path> inserted = new ArrayList<>(batch.size());
+        for (Path file : batch) {
+            // a watch event may have been first
+            if (Collections.binarySearch(files, file) < 0)
+                inserted.add(file);
+        }
+        if (inserted.isEmpty())
+            return;
+        Collections.sort(inserted);
+        List<Path> merged = new ArrayList<>(files.size() + inserted.size());
+        // before[k]: the number of old files before the k-th inserted one
+        int[] before = new int[inserted.size()];
+        int i = 0;
+        for (int k = 0; k < inserted.size(); k++) {
+            Path file = inserted.get(k);
+            while (i < files.size() && files.get(i).compareTo(file) < 0)
+                merged.add(files.get(i++));
+            before[k] = i;
+            merged.add(file);
+        }
+        while (i < files.size())
+            merged.add(files.get(i++));
+        files.clear();
+        files.addAll(merged);
+        // an old file moves up by the number of inserted ones sorted before it
+        changed(idx -> idx < 0 ? idx : idx + upperBound(before, idx));
+    }
+
+    /**
+     * @return the number of elements of the sorted {@code values} that are &lt;= {@code key}
+     */
+    private static int upperBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private synchronized void removed(Path file) {
+        // deleted through this handler already, or reported by the watch service first
+        int pos = Collections.binarySearch(files, file);
+        if (pos >= 0)
+            removeAt(pos);
+    }
+
+    private void removeAt(int pos) {
+        if (metadata.remove(files.get(pos).getFileName().toString()) != null)
+            metadataChanged = true;
+        files.remove(pos);
+        changed(i -> i == pos ? -1 : (i > pos ? i - 1 : i));
+    }
+
+    /**
+     * Queues the report of a change, with the handler locked.
+     */
+    private void changed(IntUnaryOperator remap) {
+        pendingChanges.add(remap);
+    }
+
+    /**
+     * Reports the queued changes, with the handler unlocked so listeners can take their own locks
+     * and query it. Called after every change; whichever thread gets here first reports the
+     * changes of the others too.
+     */
+    private void fire() {
+        synchronized (fireLock) {
+            while (true) {
+                IntUnaryOperator remap;
+                synchronized (this) {
+                    remap = pendingChanges.poll();
+                }
+                if (remap == null)
+                    return;
+                for (IndexListener listener : listeners)
+                    listener.indexChanged(remap);
+            }
+        }
     }
 }
@@ -0,0 +1,114 @@
+package kk.imageviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Finds the JPEG thumbnail embedded in the EXIF (APP1) or JFIF extension (APP0 JFXX) segment of a
+ * JPEG file. Both segments precede the image data, so the first {@link #HEAD_BYTES} bytes of the
+ * file are enough.
+ */
+final class ExifThumbnail {
+
+    /**
+     * Maximum size of an APP segment plus the SOI marker and some room for an APP0 before it.
+     */
+    static final int HEAD_BYTES = 64 * 1024 + 1024;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+
+    private static final int JFXX_JPEG_THUMBNAIL = 0x10;
+
+    private ExifThumbnail() {
+    }
+
+    /**
+     * @param head the beginning of a JPEG file
+     * @return the thumbnail as a JPEG stream, or {@code null} if there is none within {@code head}
+     */
+    static byte[] extract(byte[] head) {
+        if (head.length < 4 || (head[0] & 0xFF) != 0xFF || (head[1] & 0xFF) != MARKER_SOI)
+            return null;
+        int pos = 2;
+        while (pos + 4 <= head.length) {
+            if ((head[pos] & 0xFF) != 0xFF)
+                return null;
+            int marker = head[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == MARKER_SOS)
+                return null;
+            int length = ((head[pos + 2] & 0xFF) << 8) | (head[pos + 3] & 0xFF);
+            int start = pos + 4;
+            int end = Math.min(pos + 2 + length, head.length);
+            byte[] thumbnail = null;
+            if (marker == MARKER_APP1 && startsWith(head, start, "Exif\0\0"))
+                thumbnail = fromTiff(head, start + 6, end);
+            else if (marker == MARKER_APP0 && startsWith(head, start, "JFXX\0") && start + 5 < end
+                    && (head[start + 5] & 0xFF) == JFXX_JPEG_THUMBNAIL)
+                thumbnail = checkJpeg(Arrays.copyOfRange(head, start + 6, end));
+            if (thumbnail != null)
+                return thumbnail;
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private static byte[] fromTiff(byte[] head, int tiff, int end) {
+        if (tiff + 8 > end)
+            return null;
+        ByteBuffer buffer = ByteBuffer.wrap(head, 0, end);
+        if (head[tiff] == 'I' && head[tiff + 1] == 'I')
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        else if (head[tiff] == 'M' && head[tiff + 1] == 'M')
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        else
+            return null;
+        try {
+            int ifd0 = tiff + buffer.getInt(tiff + 4);
+            int ifd1 = tiff + buffer.getInt(ifd0 + 2 + 12 * (buffer.getShort(ifd0) & 0xFFFF));
+            if (ifd1 == tiff)
+                return null;
+            int entries = buffer.getShort(ifd1) & 0xFFFF;
+            int offset = -1;
+            int length = -1;
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd1 + 2 + 12 * i;
+                int tag = buffer.getShort(entry) & 0xFFFF;
+                if (tag == TAG_JPEG_INTERCHANGE_FORMAT)
+                    offset = buffer.getInt(entry + 8);
+                else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)
+                    length = buffer.getInt(entry + 8);
+            }
+            // a corrupt offset or length near Integer.MAX_VALUE must not overflow the bounds check
+            if (offset <= 0 || length <= 0 || offset > end - tiff || length > end - tiff - offset)
+                return null;
+            return checkJpeg(Arrays.copyOfRange(head, tiff + offset, tiff + offset + length));
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static byte[] checkJpeg(byte[] data) {
+        if (data.length < 2 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != MARKER_SOI)
+            return null;
+        return data;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, String prefix) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.US_ASCII);
+        if (offset + bytes.length > data.length)
+            return false;
+        return Arrays.equals(data, offset, offset + bytes.length, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,37 @@
+package kk.imageviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The file system operations of the viewer, so they can be replaced, e.g. by a {@link LatencyFileAccess}
+ * simulating a network file system. The default methods go to {@link Files}.
+ */
+public interface FileAccess {
+    FileAccess LOCAL = new FileAccess() {
+    };
+
+    default DirectoryStream<Path> list(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        return Files.newDirectoryStream(dir, filter);
+    }
+
+    default InputStream open(Path file) throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    default long size(Path file) throws IOException {
+        return Files.size(file);
+    }
+
+    default BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    default void delete(Path file) throws IOException {
+        Files.delete(file);
+    }
+}
@@ -1,125 +1,634 @@
 package kk.imageviewer;
 
 import org.imgscalr.Scalr;
+import org.imgscalr.StripScaler;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Logger;
 
-public class ImageManager {
+public class ImageManager implements AutoCloseable {
 
     private static final int STATUS_DONE = 2;
     private static final int STATUS_WAIT = 0;
     private static final int STATUS_WORK = 1;
 
+    private static final int READ_AHEAD_DISTANCE = 50;
+    private static final long READ_AHEAD_POLL_MILLIS = 20;
+    private static final int READ_CHUNK_BYTES = 256 * 1024;
+    /**
+     * Images that still have more than this many times the pixels of their scaled result after
+     * subsampling are decoded in strips and scaled as they are read, see {@link #decodeInStrips}.
+     * Subsampling leaves between 4 and 16 times the result, or less when the image is not much
+     * larger than the frame to begin with.
+     */
+    private static final long STRIP_DECODE_MIN_RATIO = 8;
+    private static final long STRIP_BYTES = 32L * 1024 * 1024;
+
 
     private static final Logger LOG = Logger.getLogger("ImageCache");
-    public final int threads;
+    public final int fetchThreads;
+    public final int decodeThreads;
 
     private final DirectoryHandler dir;
-    private final Map<Integer, ImageProcessing> cache = new HashMap<>();
-    private final LinkedBlockingDeque<Integer> workQueue = new LinkedBlockingDeque<>(10);
-    private final ImageReaderThread[] readerThreads;
-    private final Object updateLock = new Object();
+    private final FileAccess fileAccess;
+    private final ByteBudgetCache<ImageProcessing> cache;
+    private final ByteBudgetCache<RawFile> rawCache;
+    private final ByteBudgetCache<DecodedSource> sourceCache;
+    private final PriorityScheduler workScheduler = new PriorityScheduler();
+    private final PriorityScheduler readAheadScheduler = new PriorityScheduler();
+    private final Semaphore ioPermits;
+    private volatile PrefetchPolicy.Window readAheadWindow;
+    private final Semaphore cpuPermits;
+    private final Semaphore taskPermits;
+    private final ExecutionMode executionMode;
+    private final ExecutorService taskExecutor;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ForkJoinPool scalingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService thumbnailExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ThumbnailThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final BlockingQueue<FetchedFile> handoffQueue;
+    private final StageStats fetchStats = new StageStats("fetch");
+    private final StageStats decodeStats = new StageStats("decode");
+    private final StageStats readAheadStats = new StageStats("read-ahead");
+    private final StageStats cancelledDecodeStats = new StageStats("cancelled decode");
     private final AtomicInteger lastRequest = new AtomicInteger(0);
+    private volatile Size lastSize = null;
+    private final PrefetchPolicy prefetchPolicy = new PrefetchPolicy();
+    private volatile boolean closed = false;
+
+    /**
+     * Uses one decode thread per core and the default raw file and decoded source cache budgets.
+     *
+     * @see #ImageManager(Path, long, long, long, int, int)
+     */
+    public ImageManager(Path directoryPath, long cacheBudgetBytes, int fetchThreads) throws IOException {
+        this(directoryPath, cacheBudgetBytes, 0, 0, fetchThreads, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Images are loaded by a two-stage pipeline: fetch threads read the raw file bytes (bound by the
+     * file system or network), decode threads decode and scale them (bound by the CPU). The stages
+     * are joined by a bounded queue, so fetching runs at most a few files ahead of decoding.
+     * <p>
+     * The raw bytes are kept in a second cache tier, filled ahead of the decoders by a read-ahead
+     * thread for the files up to {@value #READ_AHEAD_DISTANCE} indices around the last request, so
+     * re-decoding or moving on to a neighbour does not hit the file system again.
+     * <p>
+     * The decoded images are kept in a third tier, so a new frame size (a window resize) only re-runs
+     * the scaling of the images around the last request.
+     * <p>
+     * The image at the last request is scaled in bands on all cores, the others on their decode thread only.
+     *
+     * @param cacheBudgetBytes       memory budget for the scaled images, a quarter of the max heap if &lt;= 0
+     * @param rawCacheBudgetBytes    memory budget for the raw file bytes, a quarter of the max heap if &lt;= 0
+     * @param sourceCacheBudgetBytes memory budget for the decoded images, an eighth of the max heap if &lt;= 0
+     * @param fetchThreads           number of files read concurrently, read-ahead included
+     * @param decodeThreads          number of images decoded and scaled concurrently
+     */
+    public ImageManager(Path directoryPath, long cacheBudgetBytes, long rawCacheBudgetBytes, long sourceCacheBudgetBytes,
+                        int fetchThreads, int decodeThreads) throws IOException {
+        this(directoryPath, cacheBudgetBytes, rawCacheBudgetBytes, sourceCacheBudgetBytes, fetchThreads, decodeThreads,
+                ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * In {@link ExecutionMode#PLATFORM} mode the stages run on {@code fetchThreads} and
+     * {@code decodeThreads} platform threads as described at
+     * {@link #ImageManager(Path, long, long, long, int, int)}.
+     * <p>
+     * In {@link ExecutionMode#VIRTUAL} mode every request gets its own virtual thread running both
+     * stages, and the two counts only bound how many of them read and decode at the same time. A
+     * thread blocked on a slow (network) file system then costs next to nothing, so many more reads
+     * can be in flight than platform threads would be started for. Where virtual threads are not
+     * available (before Java 21) the tasks run on {@code fetchThreads + decodeThreads} platform
+     * threads instead and a warning is logged.
+     * <p>
+     * All threads are daemon threads and stop on {@link #close()}.
+     */
+    public ImageManager(Path directoryPath, long cacheBudgetBytes, long rawCacheBudgetBytes, long sourceCacheBudgetBytes,
+                        int fetchThreads, int decodeThreads, ExecutionMode executionMode) throws IOException {
+        this(directoryPath, cacheBudgetBytes, rawCacheBudgetBytes, sourceCacheBudgetBytes, fetchThreads, decodeThreads,
+                executionMode, FileAccess.LOCAL);
+    }
+
+    /**
+     * Reads the directory and the files through {@code fileAccess}, e.g. a {@link LatencyFileAccess} to
+     * see how the pipeline copes with a slow file system.
+     *
+     * @see #ImageManager(Path, long, long, long, int, int, ExecutionMode)
+     */
+    public ImageManager(Path directoryPath, long cacheBudgetBytes, long rawCacheBudgetBytes, long sourceCacheBudgetBytes,
+                        int fetchThreads, int decodeThreads, ExecutionMode executionMode, FileAccess fileAccess)
+            throws IOException {
+        this(directoryPath, cacheBudgetBytes, rawCacheBudgetBytes, sourceCacheBudgetBytes, fetchThreads, decodeThreads,
+                executionMode, fileAccess, false);
+    }
+
+    /**
+     * With {@code streamListing} the directory is listed in the background and the constructor
+     * returns at once, with the index kept from the last run (see {@link IndexSnapshot}) or with no
+     * images yet, see {@link DirectoryHandler}. Images can be loaded as soon
+     * as {@link #getNumberOfImages()} covers them; files found later inside the prefetch window of
+     * the last request are scheduled right away.
+     *
+     * @see #ImageManager(Path, long, long, long, int, int, ExecutionMode, FileAccess)
+     */
+    public ImageManager(Path directoryPath, long cacheBudgetBytes, long rawCacheBudgetBytes, long sourceCacheBudgetBytes,
+                        int fetchThreads, int decodeThreads, ExecutionMode executionMode, FileAccess fileAccess,
+                        boolean streamListing) throws IOException {
+        this.fileAccess = fileAccess;
+        this.dir = new DirectoryHandler(directoryPath, fileAccess, streamListing,
+                IndexSnapshot.location(directoryPath));
+        if (cacheBudgetBytes <= 0)
+            cacheBudgetBytes = Runtime.getRuntime().maxMemory() / 4;
+        if (rawCacheBudgetBytes <= 0)
+            rawCacheBudgetBytes = Runtime.getRuntime().maxMemory() / 4;
+        if (sourceCacheBudgetBytes <= 0)
+            sourceCacheBudgetBytes = Runtime.getRuntime().maxMemory() / 8;
+        this.cache = new ByteBudgetCache<>(cacheBudgetBytes, imageProcessing -> ByteBudgetCache.imageBytes(imageProcessing.img));
+        this.rawCache = new ByteBudgetCache<>(rawCacheBudgetBytes, rawFile -> rawFile.data.length);
+        this.sourceCache = new ByteBudgetCache<>(sourceCacheBudgetBytes, source -> ByteBudgetCache.imageBytes(source.image));
+        this.fetchThreads = fetchThreads;
+        this.decodeThreads = decodeThreads;
+        this.executionMode = executionMode;
+        this.ioPermits = new Semaphore(fetchThreads);
+        this.cpuPermits = new Semaphore(decodeThreads);
+        this.taskPermits = new Semaphore(fetchThreads + decodeThreads);
+        this.handoffQueue = new ArrayBlockingQueue<>(decodeThreads);
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            this.taskExecutor = newVirtualThreadExecutor(fetchThreads + decodeThreads);
+            startWorker(new TaskDispatcher(), "TaskDispatcher");
+        } else {
+            this.taskExecutor = null;
+            for (int i = 0; i < fetchThreads; i++)
+                startWorker(new FetchThread(i), "FetchThread-" + i);
+            for (int i = 0; i < decodeThreads; i++)
+                startWorker(new DecodeThread(i), "DecodeThread-" + i);
+        }
+        startWorker(new ReadAheadThread(), "ReadAheadThread");
+        dir.addIndexListener(this::indexChanged);
+        dir.watch();
+    }
+
+    private void startWorker(Runnable worker, String name) {
+        Thread thread = new Thread(worker, name);
+        thread.setDaemon(true);
+        workers.add(thread);
+        thread.start();
+    }
 
-    public ImageManager(Path directoryPath, int fileCacheSize, int threads) throws IOException {
-        this.dir = new DirectoryHandler(directoryPath);
-        this.threads = threads;
-        readerThreads = new ImageReaderThread[this.threads];
-        for (int i = 0; i < threads; i++) {
-            readerThreads[i] = new ImageReaderThread(i);
-            new Thread(readerThreads[i]).start();
+    /**
+     * Virtual threads are a preview feature before Java 21, so the factory is looked up at runtime.
+     * Without it the tasks run on a fixed pool of {@code fallbackThreads} daemon platform threads,
+     * as many as {@link ExecutionMode#PLATFORM} would start.
+     */
+    private static ExecutorService newVirtualThreadExecutor(int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            LOG.warning("virtual threads not available, running the tasks on " + fallbackThreads
+                    + " platform threads: " + e);
+            return Executors.newFixedThreadPool(fallbackThreads, r -> {
+                Thread thread = new Thread(r, "ImageTask");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+    }
+
+    /**
+     * Stops all worker threads and cancels all pending requests. Reads and decodes in flight give
+     * up at their next cancellation check.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (ImageProcessing imageProcessing : cache.clear())
+            imageProcessing.cancel();
+        for (Thread worker : workers)
+            worker.interrupt();
+        if (taskExecutor != null)
+            taskExecutor.shutdownNow();
+        thumbnailExecutor.shutdownNow();
+        scalingPool.shutdownNow();
+        dir.close();
+    }
 
-        new Thread(new CleanerThread()).start();
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
     }
 
+    /**
+     * @throws IndexOutOfBoundsException if there is no image at {@code requestedFileIdx} (yet)
+     */
     public ImageFutureHandle loadImage(int requestedFileIdx, int frameWidth, int frameHeight) {
-        String name = dir.getFile(requestedFileIdx).getFileName().toString();
+        if (closed)
+            throw new IllegalStateException("image manager is closed");
+        Path file = dir.getFile(requestedFileIdx);
+        if (file == null)
+            throw new IndexOutOfBoundsException("no image at " + requestedFileIdx + " of " + dir.getN());
+        String name = file.getFileName().toString();
         Size size = new Size(frameWidth, frameHeight);
+        lastSize = size;
         lastRequest.set(requestedFileIdx);
-        var scheduled = new HashSet<Integer>(15);
-        ImageFutureHandle res;
-        synchronized (updateLock) {
-            for (int i = requestedFileIdx - 5; i <= requestedFileIdx + 5; i++) {
-                if (schedule(i, size))
-                    scheduled.add(i);
-            }
+        PrefetchPolicy.Window window = prefetchPolicy.request(requestedFileIdx);
+        workScheduler.reprioritise(requestedFileIdx, window.direction(), window::contains);
+        // eviction is driven by requests and inserts only: waiting or in-flight work that left
+        // the window is cancelled, done images stay until the budget needs their room
+        for (ImageProcessing left : cache.removeIf((idx, ip) -> !window.contains(idx) && ip.status.get() != STATUS_DONE))
+            left.cancel();
+        evictOverBudget();
+        scheduleWindow(window, size);
+        ImageFutureHandle res = null;
+        while (res == null) {
             ImageProcessing imageProcessing = cache.get(requestedFileIdx);
-            if (imageProcessing != null) {
-                if (imageProcessing.status == STATUS_DONE) {
-                    res = new ImageFutureHandle(requestedFileIdx, name,
-                            CompletableFuture.completedFuture(new ImageResult(requestedFileIdx, imageProcessing.fileName, imageProcessing.img)));
-                } else {
-                    CompletableFuture<ImageResult> future = new CompletableFuture<>();
-                    if (imageProcessing.future != null)
-                        imageProcessing.future.cancel(true);
-                    imageProcessing.future = future;
-
-                    res = new ImageFutureHandle(requestedFileIdx, name, future);
+            if (imageProcessing == null) {
+                // removed by a concurrent eviction or failure in between, schedule it again
+                if (schedule(requestedFileIdx, size)) {
+                    workScheduler.submit(requestedFileIdx);
+                } else if (dir.getFile(requestedFileIdx) == null) {
+                    // the file went away under us, schedule() will keep refusing it
+                    res = new ImageFutureHandle(requestedFileIdx, name, CompletableFuture.failedFuture(
+                            new IndexOutOfBoundsException("no image at " + requestedFileIdx + " of " + dir.getN())),
+                            new ProgressiveResult());
                 }
+                continue;
+            }
+            if (imageProcessing.status.get() == STATUS_DONE) {
+                ImageResult result = new ImageResult(requestedFileIdx, imageProcessing.fileName, imageProcessing.img, Quality.FINAL);
+                ProgressiveResult progress = new ProgressiveResult();
+                progress.publish(result);
+                res = new ImageFutureHandle(requestedFileIdx, name, CompletableFuture.completedFuture(result), progress);
             } else {
-                throw new IllegalStateException("no mapping in cache");
+                ImageFutureHandle handle = new ImageFutureHandle(requestedFileIdx, name, new CompletableFuture<>(), new ProgressiveResult());
+                imageProcessing.attach(handle);
+                if (handle.progress.latest() == null)
+                    thumbnailExecutor.execute(() -> loadThumbnail(handle, imageProcessing));
+                res = handle;
             }
         }
-        boolean requestedIdxScheduled = scheduled.remove(requestedFileIdx);
-        if (requestedIdxScheduled) {
-            try {
-                workQueue.putFirst(requestedFileIdx);
-            } catch (InterruptedException e) {
-                res.future.cancel(true);
-                return res;
+        scheduleReadAhead(window);
+
+        return res;
+    }
+
+    private void scheduleWindow(PrefetchPolicy.Window window, Size size) {
+        for (int i = window.first(); i <= window.last(); i++) {
+            if (schedule(i, size))
+                workScheduler.submit(i);
+        }
+    }
+
+    /**
+     * Publishes the thumbnail embedded in the file to the progress of {@code handle}, read from the
+     * raw cache or from the first few KB of the file, unless a better result is there first.
+     */
+    private void loadThumbnail(ImageFutureHandle handle, ImageProcessing imageProcessing) {
+        if (handle.progress.latest() != null || lastRequest.get() != handle.idx)
+            return;
+        try {
+            RawFile rawFile = rawCache.get(handle.idx);
+            byte[] head = rawFile != null && rawFile.fileName.equals(imageProcessing.fileName) ? rawFile.data : null;
+            if (head == null) {
+                try (InputStream in = fileAccess.open(imageProcessing.file)) {
+                    head = in.readNBytes(ExifThumbnail.HEAD_BYTES);
+                }
             }
+            byte[] thumbnailData = ExifThumbnail.extract(head);
+            if (thumbnailData == null)
+                return;
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(thumbnailData));
+            if (thumbnail == null || handle.progress.latest() != null)
+                return;
+            // nothing to show in an empty frame (e.g. a panel not laid out yet)
+            if (imageProcessing.outputSize.width <= 0 || imageProcessing.outputSize.height <= 0)
+                return;
+            Size size = fitImageIntoFrame(new Size(thumbnail.getWidth(), thumbnail.getHeight()), imageProcessing.outputSize);
+            thumbnail = Scalr.resize(thumbnail, Scalr.Method.BALANCED, Scalr.Mode.FIT_EXACT, size.width, size.height);
+            handle.progress.publish(new ImageResult(handle.idx, imageProcessing.fileName, thumbnail, Quality.THUMBNAIL));
+        } catch (IOException | RuntimeException e) {
+            // the thumbnail is only a preview, a broken one (e.g. a CMMException) must not escape
+            LOG.info("no thumbnail for " + imageProcessing.fileName + ": " + e);
         }
-        for (Integer idx : scheduled) {
+    }
+
+    /**
+     * Schedules the read-ahead of the raw files, over the prefetch window stretched to
+     * {@value #READ_AHEAD_DISTANCE} images ahead.
+     */
+    private void scheduleReadAhead(PrefetchPolicy.Window window) {
+        PrefetchPolicy.Window readAheadWindow = PrefetchPolicy.stretch(window, READ_AHEAD_DISTANCE);
+        this.readAheadWindow = readAheadWindow;
+        readAheadScheduler.reprioritise(window.center(), window.direction(), readAheadWindow::contains);
+        int n = dir.getN();
+        for (int i = Math.max(0, readAheadWindow.first()); i <= Math.min(n - 1, readAheadWindow.last()); i++) {
+            if (!window.contains(i))
+                readAheadScheduler.submit(i);
+        }
+    }
+
+    private boolean inReadAheadWindow(int idx) {
+        PrefetchPolicy.Window window = readAheadWindow;
+        return window != null && window.contains(idx);
+    }
+
+    /**
+     * Returns the bytes of {@code file} from the raw cache, or reads them and adds them to it.
+     * <p>
+     * A {@code readAhead} gives way to the fetch threads: it takes an I/O permit only while none of
+     * them waits for one, and gives it up between chunks, cancelled, as soon as one does.
+     */
+    private byte[] fetch(int idx, Path file, StageStats stats, BooleanSupplier cancelled, boolean readAhead)
+            throws IOException, InterruptedException {
+        String fileName = file.getFileName().toString();
+        RawFile rawFile = rawCache.get(idx);
+        if (rawFile != null && rawFile.fileName.equals(fileName))
+            return rawFile.data;
+        byte[] data;
+        long time = System.nanoTime();
+        if (readAhead) {
+            while (ioPermits.hasQueuedThreads() || !ioPermits.tryAcquire()) {
+                if (cancelled.getAsBoolean())
+                    throw new CancellationException("read-ahead of " + fileName + " cancelled");
+                Thread.sleep(READ_AHEAD_POLL_MILLIS);
+            }
+        } else {
+            ioPermits.acquire();
+        }
+        try {
+            BooleanSupplier yielding = cancelled;
+            if (readAhead)
+                yielding = () -> cancelled.getAsBoolean() || ioPermits.hasQueuedThreads();
+            data = readFile(file, yielding);
+        } finally {
+            ioPermits.release();
+        }
+        stats.record(data.length, System.nanoTime() - time);
+        rawCache.put(idx, new RawFile(fileName, data));
+        rawCache.evict(lastRequest.get());
+        return data;
+    }
+
+    /**
+     * Reads the file in chunks, giving up between them once {@code cancelled}.
+     */
+    private byte[] readFile(Path file, BooleanSupplier cancelled) throws IOException {
+        try (InputStream in = fileAccess.open(file)) {
+            byte[] data = new byte[(int) fileAccess.size(file)];
+            int read = 0;
+            while (read < data.length) {
+                if (cancelled.getAsBoolean())
+                    throw new CancellationException("reading " + file.getFileName() + " cancelled");
+                int n = in.readNBytes(data, read, Math.min(READ_CHUNK_BYTES, data.length - read));
+                if (n == 0)
+                    return Arrays.copyOf(data, read);
+                read += n;
+            }
+            byte[] rest = in.readAllBytes();
+            if (rest.length == 0)
+                return data;
+            byte[] grown = Arrays.copyOf(data, data.length + rest.length);
+            System.arraycopy(rest, 0, grown, data.length, rest.length);
+            return grown;
+        }
+    }
+
+    /**
+     * Returns the cached decoded image, if it was not subsampled more than the frame now allows.
+     */
+    private BufferedImage cachedSource(int idx, ImageProcessing imageProcessing) {
+        DecodedSource source = sourceCache.get(idx);
+        if (source == null || !source.fileName.equals(imageProcessing.fileName))
+            return null;
+        if (source.subsampling > subsampling(source.fullSize, imageProcessing.outputSize))
+            return null;
+        return source.image;
+    }
+
+    /**
+     * Decodes the image subsampled as far as {@link #subsampling(Size, Size)} allows for the frame,
+     * so large images never get decoded at full resolution just to be scaled down. Images still
+     * more than {@value #STRIP_DECODE_MIN_RATIO} times the scaled result and larger than one strip
+     * are decoded and scaled in strips, the result is then already scaled to the frame.
+     */
+    private DecodedSource decode(byte[] data, ImageProcessing imageProcessing) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                throw new IOException("no reader for " + imageProcessing.fileName);
+            ImageReader reader = readers.next();
             try {
-                workQueue.putLast(idx);
-            } catch (InterruptedException ignored) {
+                reader.setInput(in, true, true);
+                reader.addIIOReadProgressListener(new AbortOnCancel(imageProcessing));
+                Size fullSize = new Size(reader.getWidth(0), reader.getHeight(0));
+                dir.recordImageSize(imageProcessing.file, fullSize.width, fullSize.height);
+                int subsampling = subsampling(fullSize, imageProcessing.outputSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1)
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                Size decodedSize = new Size((fullSize.width + subsampling - 1) / subsampling,
+                        (fullSize.height + subsampling - 1) / subsampling);
+                Size target = fitImageIntoFrame(decodedSize, imageProcessing.outputSize);
+                long decodedPixels = (long) decodedSize.width * decodedSize.height;
+                if (4 * decodedPixels > STRIP_BYTES
+                        && decodedPixels > STRIP_DECODE_MIN_RATIO * target.width * target.height) {
+                    BufferedImage image = decodeInStrips(reader, param, fullSize, subsampling, decodedSize,
+                            imageProcessing);
+                    return new DecodedSource(imageProcessing.fileName, image, fullSize, subsampling, true);
+                }
+                BufferedImage image = reader.read(0, param);
+                if (imageProcessing.cancelled)
+                    throw new CancellationException("decoding " + imageProcessing.fileName + " cancelled");
+                return new DecodedSource(imageProcessing.fileName, image, fullSize, subsampling, false);
+            } finally {
+                reader.dispose();
             }
         }
+    }
 
-        return res;
+    /**
+     * Reads the image in horizontal strips of at most {@value #STRIP_BYTES} bytes with
+     * {@link ImageReadParam#setSourceRegion} and feeds them to a {@link StripScaler}, so neither the
+     * full resolution nor the subsampled image is ever held: only the result and one strip.
+     * <p>
+     * The price is decoding time. Readers of sequential formats (JPEG, PNG) cannot start at a row,
+     * every strip decodes and drops all rows above it again, so {@code n} strips take about
+     * {@code (n + 1) / 2} times as long to decode as a single read. The strips are as tall as the
+     * byte limit allows to keep {@code n} small; tiled formats like TIFF do not pay this.
+     */
+    private BufferedImage decodeInStrips(ImageReader reader, ImageReadParam param, Size fullSize, int subsampling,
+                                         Size decodedSize, ImageProcessing imageProcessing) throws IOException {
+        Size target = fitImageIntoFrame(decodedSize, imageProcessing.outputSize);
+        StripScaler scaler = new StripScaler(decodedSize.width, decodedSize.height, target.width, target.height,
+                Scalr.Filter.LANCZOS3);
+        // in source rows, a multiple of the subsampling so every strip starts on a subsampled row
+        int stripRows = (int) Math.max(1, STRIP_BYTES / (4L * decodedSize.width)) * subsampling;
+        int strips = 0;
+        for (int y = 0; y < fullSize.height; y += stripRows) {
+            param.setSourceRegion(new Rectangle(0, y, fullSize.width, Math.min(stripRows, fullSize.height - y)));
+            BufferedImage strip = reader.read(0, param);
+            if (imageProcessing.cancelled)
+                throw new CancellationException("decoding " + imageProcessing.fileName + " cancelled");
+            scaler.write(strip);
+            strips++;
+        }
+        LOG.info("decoded " + imageProcessing.fileName + " (" + fullSize.width + "x" + fullSize.height + ") in "
+                + strips + " strips");
+        return scaler.getResult();
     }
 
+    /**
+     * Source subsampling for decoding an image of {@code fullSize} into {@code frame}. Subsampling
+     * drops pixels without filtering, so the decoded image is kept at least twice the size of the
+     * target and Scalr does the last step for quality.
+     */
+    private int subsampling(Size fullSize, Size frame) {
+        Size target = fitImageIntoFrame(fullSize, frame);
+        if (target.width <= 0 || target.height <= 0)
+            return 1;
+        return Math.max(1, Math.min(fullSize.width / (2 * target.width), fullSize.height / (2 * target.height)));
+    }
+
+    /**
+     * Puts a new request for {@code idx} into the cache, unless one for the same file and frame
+     * size is there already. A replaced request that is not done yet is cancelled.
+     *
+     * @return whether a new request was put, and should be submitted to the workers
+     */
     private boolean schedule(int idx, Size size) {
-        if (idx < 0 || idx >= dir.getN())
+        Path file = dir.getFile(idx);
+        if (file == null)
             return false;
-        String name = dir.getFile(idx).getFileName().toString();
-        ImageProcessing imageProcessing = cache.get(idx);
-        if (imageProcessing != null) {
+        String name = file.getFileName().toString();
+        ImageProcessing created = new ImageProcessing(file, size);
+        ImageProcessing current = cache.compute(idx, imageProcessing -> {
+            if (imageProcessing == null)
+                return created;
             if (imageProcessing.fileName.equals(name) && imageProcessing.outputSize.equals(size))
-                return false;
+                return imageProcessing;
             LOG.info("wrong filename or frame size at idx " + idx + " | " + imageProcessing.fileName);
-        }
-        cache.put(idx, new ImageProcessing(name, size));
-        return true;
+            if (imageProcessing.status.get() != STATUS_DONE)
+                imageProcessing.cancel();
+            return created;
+        });
+        return current == created;
     }
 
+    /**
+     * Deletes the file at {@code idx}, the cached images of the others move down with their index.
+     */
     public void delete(int idx) {
-        synchronized (updateLock) {
-            Iterator<Map.Entry<Integer, ImageProcessing>> it = cache.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Integer, ImageProcessing> next = it.next();
-                if (next.getKey() >= idx) {
-                    CompletableFuture<ImageResult> future = next.getValue().future;
-                    if (future != null)
-                        future.cancel(true);
-                }
-                it.remove();
-            }
-            dir.delete(idx);
+        dir.delete(idx);
+    }
+
+    /**
+     * Deletes the file named {@code fileName}, wherever it is in the index by now.
+     */
+    public void delete(String fileName) {
+        dir.delete(fileName);
+    }
+
+    /**
+     * Registers {@code listener} for the changes of the directory index, called after the caches
+     * followed the change.
+     */
+    public void addIndexListener(DirectoryHandler.IndexListener listener) {
+        dir.addIndexListener(listener);
+    }
+
+    /**
+     * Moves everything kept by index to the new index of its file, and cancels the requests for
+     * files that are gone. Work in flight under an old index is harmless: every cache entry is
+     * checked against the file name before use.
+     * <p>
+     * Files that came into the prefetch window of the last request, found by a streamed listing or
+     * created meanwhile, are scheduled at once.
+     */
+    private void indexChanged(IntUnaryOperator remap) {
+        for (ImageProcessing gone : cache.remap(remap))
+            gone.cancel();
+        rawCache.remap(remap);
+        sourceCache.remap(remap);
+        workScheduler.remap(remap);
+        readAheadScheduler.remap(remap);
+        lastRequest.updateAndGet(idx -> {
+            int remapped = remap.applyAsInt(idx);
+            // the file was deleted, the next one took its place
+            return remapped < 0 ? idx : remapped;
+        });
+        prefetchPolicy.remap(remap);
+        PrefetchPolicy.Window window = prefetchPolicy.current();
+        Size size = lastSize;
+        if (window != null && size != null && !closed) {
+            scheduleWindow(window, size);
+            scheduleReadAhead(window);
+        }
+    }
+
+    /**
+     * Drops a failed request from the cache, so the next request for the image retries it.
+     */
+    private void fail(int idx, ImageProcessing imageProcessing, Exception e) {
+        cache.remove(idx, imageProcessing);
+        imageProcessing.fail(e);
+    }
+
+    public StageStats getFetchStats() {
+        return fetchStats;
+    }
+
+    public StageStats getDecodeStats() {
+        return decodeStats;
+    }
+
+    public StageStats getReadAheadStats() {
+        return readAheadStats;
+    }
+
+    /**
+     * Decodes and scalings given up because the image left the prefetch window or was replaced
+     * before they finished, with the time spent on them.
+     */
+    public StageStats getCancelledDecodeStats() {
+        return cancelledDecodeStats;
+    }
+
+    private void evictOverBudget() {
+        for (ImageProcessing evicted : cache.evict(lastRequest.get())) {
+            LOG.info("evicted " + evicted.fileName + ", cache holds " + cache.usedBytes() / (1024 * 1024) + "MB of " + cache.budget() / (1024 * 1024) + "MB");
+            evicted.cancel();
         }
     }
 
@@ -127,6 +636,22 @@ public class ImageManager {
         return dir.getN();
     }
 
+    /**
+     * @return the index of the file named {@code fileName} now, or {@code -1} if it is gone
+     */
+    public int indexOf(String fileName) {
+        return dir.indexOf(fileName);
+    }
+
+    /**
+     * @return the full size of the image at {@code idx} if it is known without reading the file
+     *         (from a decode in this or an earlier run), otherwise {@code null}
+     */
+    public Dimension getImageSize(int idx) {
+        Path file = dir.getFile(idx);
+        return file == null ? null : dir.getImageSize(file);
+    }
+
     private Size fitImageIntoFrame(Size img, Size frame) {
         var sw = img.width;
         var sh = img.height;
@@ -147,27 +672,111 @@ public class ImageManager {
             rw = (int) (th * sratio);
         }
 
-        return new Size(rw, rh);
+        // a very wide or tall image would round to 0 pixels, which Scalr rejects
+        return new Size(Math.max(1, rw), Math.max(1, rh));
     }
 
-    public record ImageResult(int indexInDir, String fileName, BufferedImage image) {
+    /**
+     * How the loading pipeline is run, see
+     * {@link #ImageManager(Path, long, long, long, int, int, ExecutionMode)}.
+     */
+    public enum ExecutionMode {
+        PLATFORM,
+        VIRTUAL
     }
 
-    public record ImageFutureHandle(int idx, String fileName, CompletableFuture<ImageResult> future) {
+    public enum Quality {
+        /**
+         * The thumbnail embedded in the file, scaled up to the frame.
+         */
+        THUMBNAIL,
+        /**
+         * Nearest-neighbour scale of the decoded image, published while the final one is scaled.
+         */
+        PREVIEW,
+        FINAL
     }
 
+    public record ImageResult(int indexInDir, String fileName, BufferedImage image, Quality quality) {
+    }
+
+    /**
+     * {@code future} completes with the {@link Quality#FINAL} result, {@code progress} publishes
+     * the provisional results before it, and the final one too.
+     */
+    public record ImageFutureHandle(int idx, String fileName, CompletableFuture<ImageResult> future,
+                                    ProgressiveResult progress) {
+    }
+
+    /**
+     * Per-index request state, shared by the request path and the workers without a lock: the status
+     * only moves forward by atomic updates, the waiting handle is swapped atomically, and whoever
+     * sees both a handle and {@link #STATUS_DONE} delivers the result, so none gets lost in between.
+     */
     private static class ImageProcessing {
+        final Path file;
         final String fileName;
         final Size outputSize;
-        BufferedImage img = null;
-        CompletableFuture<ImageResult> future = null;
-        int status = 0;
+        final AtomicInteger status = new AtomicInteger(STATUS_WAIT);
+        final AtomicReference<ImageFutureHandle> waiting = new AtomicReference<>();
+        volatile BufferedImage img = null;
+        volatile long startNanos = 0;
+        volatile boolean cancelled = false;
 
-        public ImageProcessing(String fileName, Size outputSize) {
-            this.fileName = fileName;
+        public ImageProcessing(Path file, Size outputSize) {
+            this.file = file;
+            this.fileName = file.getFileName().toString();
             this.outputSize = outputSize;
         }
 
+        /**
+         * Makes {@code handle} the one waiting for the result, cancelling the one waiting before.
+         */
+        void attach(ImageFutureHandle handle) {
+            ImageFutureHandle previous = waiting.getAndSet(handle);
+            if (previous != null)
+                previous.future.cancel(true);
+            if (status.get() == STATUS_DONE)
+                deliver();
+        }
+
+        ProgressiveResult progress() {
+            ImageFutureHandle handle = waiting.get();
+            return handle == null ? null : handle.progress;
+        }
+
+        void complete(BufferedImage img) {
+            this.img = img;
+            status.set(STATUS_DONE);
+            deliver();
+        }
+
+        void fail(Exception e) {
+            ImageFutureHandle handle = waiting.getAndSet(null);
+            if (handle != null)
+                handle.future.completeExceptionally(e);
+        }
+
+        /**
+         * Cancels the future and tells the workers to drop the image at their next check, the
+         * reader and the incremental scaling included.
+         */
+        void cancel() {
+            cancelled = true;
+            ImageFutureHandle handle = waiting.getAndSet(null);
+            if (handle != null)
+                handle.future.cancel(true);
+        }
+
+        private void deliver() {
+            ImageFutureHandle handle = waiting.getAndSet(null);
+            if (handle == null)
+                return;
+            ImageResult result = new ImageResult(handle.idx, fileName, img, Quality.FINAL);
+            handle.progress.publish(result);
+            handle.future.complete(result);
+        }
+
         @Override
         public String toString() {
             return "ImageProcessing{" +
@@ -181,84 +790,292 @@ public class ImageManager {
     private record Size(int width, int height) {
     }
 
-    private class ImageReaderThread implements Runnable {
-        final int id;
+    /**
+     * Aborts the read, on the reading thread, as soon as the reader reports progress after the
+     * image was cancelled.
+     */
+    private record AbortOnCancel(ImageProcessing imageProcessing) implements IIOReadProgressListener {
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if (imageProcessing.cancelled)
+                source.abort();
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+    }
+
+    private record RawFile(String fileName, byte[] data) {
+    }
+
+    /**
+     * Decoded image, {@code subsampling} times smaller than the {@code fullSize} of the file, or if
+     * {@code scaled}, decoded in strips and already scaled to the frame.
+     */
+    private record DecodedSource(String fileName, BufferedImage image, Size fullSize, int subsampling,
+                                 boolean scaled) {
+    }
+
+    /**
+     * Either the raw {@code data} of the file or its already decoded {@code source}.
+     */
+    private record FetchedFile(int idx, ImageProcessing imageProcessing, byte[] data, BufferedImage source) {
+    }
+
+    /**
+     * First pipeline stage, takes the next request from the work scheduler and pulls the raw file
+     * bytes into memory, or finds the decoded source cached.
+     *
+     * @return the fetched file, or {@code null} if there is nothing to decode
+     */
+    private FetchedFile fetchStage(int idx, Logger log) throws InterruptedException {
+        ImageProcessing imageProcessing = cache.get(idx);
+        if (imageProcessing == null) {
+            log.info("image request is null");
+            return null;
+        }
+        if (!imageProcessing.status.compareAndSet(STATUS_WAIT, STATUS_WORK)) {
+            log.info("request is already being handled");
+            return null;
+        }
+        imageProcessing.startNanos = System.nanoTime();
+        try {
+            BufferedImage source = cachedSource(idx, imageProcessing);
+            if (source != null) {
+                log.info("decoded source of " + idx + " (" + imageProcessing.fileName + ") is cached");
+                return new FetchedFile(idx, imageProcessing, null, source);
+            }
+            long time = System.nanoTime();
+            byte[] data = fetch(idx, imageProcessing.file, fetchStats, () -> imageProcessing.cancelled, false);
+            time = System.nanoTime() - time;
+            log.info("fetching done " + idx + " (" + imageProcessing.fileName + ") in " + time / 1_000_000 + "ms, " + fetchStats);
+            return new FetchedFile(idx, imageProcessing, data, null);
+        } catch (IOException e) {
+            log.warning("fetching " + imageProcessing.fileName + " failed: " + e);
+            fail(idx, imageProcessing, e);
+        } catch (CancellationException e) {
+            log.info(e.getMessage());
+        } catch (RuntimeException e) {
+            // must not kill the worker thread, nor leave the request in the working state
+            log.warning("fetching " + imageProcessing.fileName + " failed: " + e);
+            fail(idx, imageProcessing, e);
+        }
+        return null;
+    }
+
+    /**
+     * Second pipeline stage, decodes the fetched bytes and scales the image to the requested frame.
+     */
+    private void decodeStage(FetchedFile fetched, Logger log) {
+        ImageProcessing imageProcessing = fetched.imageProcessing;
+        if (imageProcessing.cancelled) {
+            log.info("dropping cancelled " + fetched.idx + " (" + imageProcessing.fileName + ")");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            long time = start;
+            BufferedImage img = fetched.source;
+            boolean scaled = false;
+            if (img == null) {
+                DecodedSource source = decode(fetched.data, imageProcessing);
+                img = source.image;
+                scaled = source.scaled;
+                // a strip decoded image only fits its frame, and is cached as the result anyway
+                if (!scaled) {
+                    sourceCache.put(fetched.idx, source);
+                    sourceCache.evict(lastRequest.get());
+                }
+            }
+            long decodeTime = System.nanoTime() - time;
+            if (!scaled) {
+                Size targetImageSize = fitImageIntoFrame(new Size(img.getWidth(), img.getHeight()), imageProcessing.outputSize);
+                ProgressiveResult progress = imageProcessing.progress();
+                if (progress != null) {
+                    BufferedImage preview = Scalr.resize(img, Scalr.Method.SPEED, Scalr.Mode.FIT_EXACT, targetImageSize.width, targetImageSize.height);
+                    progress.publish(new ImageResult(fetched.idx, imageProcessing.fileName, preview, Quality.PREVIEW));
+                }
+                // the image the user waits for gets all cores, the ones prefetched around it one each
+                ForkJoinPool pool = fetched.idx == lastRequest.get() ? scalingPool : null;
+                img = Scalr.scaleImageIncrementally(img, targetImageSize.width, targetImageSize.height, Scalr.Method.QUALITY,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR, () -> imageProcessing.cancelled, pool);
+            }
+            time = System.nanoTime() - time;
+            decodeStats.record(fetched.data == null ? 0 : fetched.data.length, time);
+            log.info("decoding done " + fetched.idx + " (" + imageProcessing.fileName + ") in " + decodeTime / 1_000_000
+                    + "ms, scaling in " + (time - decodeTime) / 1_000_000 + "ms, " + decodeStats);
+            imageProcessing.complete(img);
+            prefetchPolicy.recordLoadLatency(System.nanoTime() - imageProcessing.startNanos);
+            cache.reweigh(fetched.idx, imageProcessing);
+            evictOverBudget();
+        } catch (IOException e) {
+            log.warning("decoding " + imageProcessing.fileName + " failed: " + e);
+            fail(fetched.idx, imageProcessing, e);
+        } catch (CancellationException e) {
+            cancelledDecodeStats.record(fetched.data == null ? 0 : fetched.data.length, System.nanoTime() - start);
+            log.info(e.getMessage());
+        } catch (RuntimeException e) {
+            // e.g. a CMMException for a broken colour profile, must not kill the worker thread nor
+            // leave the request in the working state
+            log.warning("decoding " + imageProcessing.fileName + " failed: " + e);
+            fail(fetched.idx, imageProcessing, e);
+        }
+    }
+
+    /**
+     * Runs the fetch stage on platform threads and hands the fetched files to the decoders.
+     */
+    private class FetchThread implements Runnable {
         final Logger log;
         private final String name;
 
-        ImageReaderThread(int id) {
-            this.id = id;
-            this.name = "ImageReaderThread-" + id;
+        FetchThread(int id) {
+            this.name = "FetchThread-" + id;
             log = Logger.getLogger(name);
         }
 
         @Override
         public void run() {
-            Thread.currentThread().setName(name);
-            while (true) {
+            while (!closed) {
                 try {
-                    int idx = workQueue.take();
-                    ImageProcessing imageProcessing;
-                    synchronized (updateLock) {
-
-                        imageProcessing = cache.get(idx);
-
-                        if (imageProcessing == null) {
-                            log.info("image request is null");
-                            continue;
-                        }
-
-                        if (Math.abs(lastRequest.get() - idx) > 10) {
-                            log.info("image request is too old, request idx is" + idx + ", last requested is " + lastRequest.get());
-                            if (imageProcessing.future != null)
-                                imageProcessing.future.cancel(true);
-                            cache.remove(idx);
-                            continue;
-                        }
-
-                        if (imageProcessing.status != STATUS_WAIT) {
-                            log.info("request is already being handled");
-                            continue;
-                        }
-                        imageProcessing.status = STATUS_WORK;
-                    }
-                    long time = System.currentTimeMillis();
-                    Path file = dir.getFile(idx);
-                    log.info("loading start " + idx + " (" + file.getFileName().toString() + ")");
-                    BufferedImage img = ImageIO.read(Files.newInputStream(file));
-                    log.info("loading done " + idx + " (" + file.getFileName().toString() + ")" + " in " + (System.currentTimeMillis() - time) + "ms");
-                    time = System.currentTimeMillis();
-                    Size targetImageSize = fitImageIntoFrame(new Size(img.getWidth(), img.getHeight()), imageProcessing.outputSize);
-                    img = Scalr.scaleImageIncrementally(img, targetImageSize.width, targetImageSize.height, Scalr.Method.QUALITY, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                    log.info("scaling done " + idx + " (" + file.getFileName().toString() + ")" + " in " + (System.currentTimeMillis() - time) + "ms");
-                    synchronized (updateLock) {
-                        imageProcessing.status = STATUS_DONE;
-                        imageProcessing.img = img;
-                        CompletableFuture<ImageResult> future = imageProcessing.future;
-                        if (future != null) {
-                            future.complete(new ImageResult(idx, imageProcessing.fileName, img));
-                        }
-                        imageProcessing.future = null;
-                    }
-                } catch (IOException | InterruptedException e) {
-                    e.printStackTrace();
+                    FetchedFile fetched = fetchStage(workScheduler.take(), log);
+                    if (fetched != null)
+                        handoffQueue.put(fetched);
+                } catch (InterruptedException e) {
+                    return;
                 }
+            }
+        }
+    }
+
+    /**
+     * Runs the decode stage on platform threads.
+     */
+    private class DecodeThread implements Runnable {
+        final Logger log;
+        private final String name;
 
+        DecodeThread(int id) {
+            this.name = "DecodeThread-" + id;
+            log = Logger.getLogger(name);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    decodeStage(handoffQueue.take(), log);
+                } catch (InterruptedException e) {
+                    return;
+                }
             }
         }
     }
 
-    private class CleanerThread implements Runnable {
+    /**
+     * Starts one task per request taken from the work scheduler, each running both stages. At most
+     * {@link #fetchThreads} + {@link #decodeThreads} tasks are started ahead, so the scheduler still
+     * decides the order; the stages inside are bound by the I/O and CPU permits.
+     */
+    private class TaskDispatcher implements Runnable {
+        final Logger log = Logger.getLogger("TaskDispatcher");
+
         @Override
         public void run() {
-            while (true) {
+            while (!closed) {
                 try {
-                    Thread.sleep(4);
+                    taskPermits.acquire();
+                    int idx;
+                    try {
+                        idx = workScheduler.take();
+                    } catch (InterruptedException e) {
+                        taskPermits.release();
+                        throw e;
+                    }
+                    taskExecutor.execute(() -> runTask(idx));
+                } catch (RejectedExecutionException e) {
+                    taskPermits.release();
+                    return;
                 } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    return;
+                }
+            }
+        }
+
+        private void runTask(int idx) {
+            try {
+                FetchedFile fetched = fetchStage(idx, log);
+                if (fetched == null)
+                    return;
+                cpuPermits.acquire();
+                try {
+                    decodeStage(fetched, log);
+                } finally {
+                    cpuPermits.release();
                 }
-                synchronized (updateLock) {
-                    cache.keySet().removeIf(idx -> Math.abs(idx - lastRequest.get()) > 15);
+            } catch (InterruptedException e) {
+                log.info("task for " + idx + " interrupted");
+            } finally {
+                taskPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Fills the raw cache with the files around the last request while the fetch threads leave
+     * I/O permits unused. A read that gave way to a fetch is queued again, one whose file left the
+     * read-ahead window is dropped.
+     */
+    private class ReadAheadThread implements Runnable {
+        final Logger log = Logger.getLogger("ReadAheadThread");
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    int idx = readAheadScheduler.take();
+                    Path file = dir.getFile(idx);
+                    if (file == null || !inReadAheadWindow(idx))
+                        continue;
+                    try {
+                        fetch(idx, file, readAheadStats, () -> closed || !inReadAheadWindow(idx), true);
+                    } catch (CancellationException e) {
+                        if (!closed && inReadAheadWindow(idx))
+                            readAheadScheduler.submit(idx);
+                    }
+                } catch (IOException e) {
+                    log.warning("read-ahead failed: " + e);
+                } catch (InterruptedException e) {
+                    return;
                 }
             }
         }
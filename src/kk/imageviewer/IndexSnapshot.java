@@ -0,0 +1,140 @@
+package kk.imageviewer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Binary snapshot of a directory index, so the next start can open the directory without listing
+ * it first, see {@link DirectoryHandler}.
+ * <p>
+ * One file per directory in the user cache directory, big-endian: a magic number, the format
+ * version and the number of entries, then per entry the file name (length as an unsigned short and
+ * UTF-8 bytes), the file size, the modification time in milliseconds and the image width and
+ * height, {@value #UNKNOWN} for the values not known. The file is read through a memory mapping
+ * and replaced atomically on write.
+ */
+final class IndexSnapshot {
+    static final int UNKNOWN = -1;
+
+    private static final int MAGIC = 0x4A495658;
+    private static final int VERSION = 1;
+    /**
+     * Bytes of an entry with an empty name: the name length, the file size and time, the image size.
+     */
+    private static final int MIN_ENTRY_BYTES = 2 + 8 + 8 + 4 + 4;
+
+    private IndexSnapshot() {
+    }
+
+    /**
+     * What the index knows about a file without reading it. {@code checked} is not kept in the
+     * snapshot: whether the size and time were read from the file in this run, rather than taken
+     * from the snapshot.
+     */
+    record Entry(String name, long size, long modified, int width, int height, boolean checked) {
+        static Entry unknown(String name) {
+            return new Entry(name, UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN, false);
+        }
+
+        Entry withImageSize(int width, int height) {
+            return new Entry(name, size, modified, width, height, checked);
+        }
+
+        Entry asChecked() {
+            return new Entry(name, size, modified, width, height, true);
+        }
+
+        /**
+         * @return whether the file still looks the same, in which case the image size still holds
+         */
+        boolean unchanged(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+
+        boolean hasImageSize() {
+            return width != UNKNOWN && height != UNKNOWN;
+        }
+    }
+
+    /**
+     * The snapshot file of {@code directory}, under {@code $XDG_CACHE_HOME/j-image-viewer}, or
+     * {@code ~/.cache/j-image-viewer} if that is not set, named after a hash of the absolute path.
+     */
+    static Path location(Path directory) {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path base = cacheHome != null && !cacheHome.isEmpty() && Path.of(cacheHome).isAbsolute()
+                ? Path.of(cacheHome) : Path.of(System.getProperty("user.home"), ".cache");
+        String key = directory.toAbsolutePath().normalize().toString();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return base.resolve("j-image-viewer").resolve(HexFormat.of().formatHex(hash, 0, 16) + ".idx");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or is not a snapshot of this version
+     */
+    static List<Entry> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+                throw new IOException(file + " is not an index snapshot");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException(file + " has version " + version + ", expected " + VERSION);
+            int count = buffer.getInt();
+            // checked before sizing the list by it, a corrupt count must not run out of memory
+            if (count < 0 || count > buffer.remaining() / MIN_ENTRY_BYTES)
+                throw new IOException(file + " is corrupt");
+            List<Entry> entries = new ArrayList<>(count);
+            byte[] name = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                if (length > name.length)
+                    name = new byte[length];
+                buffer.get(name, 0, length);
+                entries.add(new Entry(new String(name, 0, length, StandardCharsets.UTF_8), buffer.getLong(),
+                        buffer.getLong(), buffer.getInt(), buffer.getInt(), false));
+            }
+            return entries;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    static void write(Path file, List<Entry> entries) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeInt(entry.width);
+                out.writeInt(entry.height);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,101 @@
+package kk.imageviewer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Adds the delays of a network file system like sshfs to another {@link FileAccess}: every
+ * operation, and every read of up to {@value #BLOCK_BYTES} bytes, waits one round trip, and the
+ * bytes read arrive at a limited rate. Concurrent operations do not share the rate, like separate
+ * requests on a link that is not saturated.
+ * <p>
+ * A thread interrupted while waiting gets an {@link InterruptedIOException}.
+ */
+public final class LatencyFileAccess implements FileAccess {
+    static final int BLOCK_BYTES = 64 * 1024;
+
+    private final FileAccess files;
+    private final long roundTripNanos;
+    private final long bytesPerSecond;
+
+    /**
+     * @param bytesPerSecond transfer rate of a read, unlimited if &lt;= 0
+     */
+    public LatencyFileAccess(FileAccess files, long roundTripNanos, long bytesPerSecond) {
+        this.files = files;
+        this.roundTripNanos = roundTripNanos;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public DirectoryStream<Path> list(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        delay(0);
+        return files.list(dir, filter);
+    }
+
+    @Override
+    public InputStream open(Path file) throws IOException {
+        delay(0);
+        return new SlowInputStream(files.open(file));
+    }
+
+    @Override
+    public long size(Path file) throws IOException {
+        delay(0);
+        return files.size(file);
+    }
+
+    @Override
+    public BasicFileAttributes attributes(Path file) throws IOException {
+        delay(0);
+        return files.attributes(file);
+    }
+
+    @Override
+    public void delete(Path file) throws IOException {
+        delay(0);
+        files.delete(file);
+    }
+
+    private void delay(long bytes) throws InterruptedIOException {
+        long nanos = roundTripNanos;
+        if (bytesPerSecond > 0)
+            nanos += bytes * 1_000_000_000L / bytesPerSecond;
+        if (nanos <= 0)
+            return;
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("simulated file access interrupted");
+        }
+    }
+
+    /**
+     * Delays every read by a round trip plus the transfer of the bytes read, at most
+     * {@value #BLOCK_BYTES} per read.
+     */
+    private class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            delay(1);
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, Math.min(len, BLOCK_BYTES));
+            delay(Math.max(n, 0));
+            return n;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package kk.imageviewer;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Sizes the prefetch window from the navigation history.
+ * <p>
+ * Successive requests give the scroll direction and the interval between requests, finished loads
+ * give the load latency, all kept as exponentially weighted moving averages. The window reaches as
+ * many images ahead as the user passes during one load, plus a small margin, and shrinks behind the
+ * more consistently the user moves in one direction. Going back and forth keeps it symmetric.
+ */
+class PrefetchPolicy {
+    static final int DEFAULT_AHEAD = 5;
+    static final int MIN_AHEAD = 2;
+    static final int MAX_AHEAD = 12;
+    static final int MIN_BEHIND = 1;
+
+    private static final double ALPHA = 0.3;
+    private static final long MAX_INTERVAL_NANOS = 5_000_000_000L;
+
+    private int lastIdx = -1;
+    private long lastRequestNanos = 0;
+    private double direction = 0;
+    private double intervalNanos = MAX_INTERVAL_NANOS;
+    private double latencyNanos = 0;
+
+    /**
+     * Window around a request, {@code ahead} images in the {@code direction} of travel and
+     * {@code behind} images the other way.
+     */
+    record Window(int center, int direction, int ahead, int behind) {
+        int first() {
+            return direction >= 0 ? center - behind : center - ahead;
+        }
+
+        int last() {
+            return direction >= 0 ? center + ahead : center + behind;
+        }
+
+        boolean contains(int idx) {
+            return idx >= first() && idx <= last();
+        }
+    }
+
+    /**
+     * Records a request and returns the prefetch window around it.
+     */
+    synchronized Window request(int idx) {
+        long now = System.nanoTime();
+        if (lastIdx >= 0 && idx != lastIdx) {
+            direction = ALPHA * Integer.signum(idx - lastIdx) + (1 - ALPHA) * direction;
+            long interval = Math.min(now - lastRequestNanos, MAX_INTERVAL_NANOS) / Math.abs(idx - lastIdx);
+            intervalNanos = ALPHA * interval + (1 - ALPHA) * intervalNanos;
+        }
+        if (idx != lastIdx) {
+            lastIdx = idx;
+            lastRequestNanos = now;
+        }
+        return window(idx);
+    }
+
+    /**
+     * @return the window around the last request, or {@code null} before the first one
+     */
+    synchronized Window current() {
+        return lastIdx < 0 ? null : window(lastIdx);
+    }
+
+    /**
+     * Moves the last request to its new index after the directory index shifted, it stays put if
+     * its file is gone.
+     */
+    synchronized void remap(IntUnaryOperator remap) {
+        if (lastIdx < 0)
+            return;
+        int remapped = remap.applyAsInt(lastIdx);
+        if (remapped >= 0)
+            lastIdx = remapped;
+    }
+
+    /**
+     * Records the time one image took from the start of its fetch to the final result.
+     */
+    synchronized void recordLoadLatency(long nanos) {
+        latencyNanos = latencyNanos == 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * latencyNanos;
+    }
+
+    /**
+     * @return the scroll direction, {@code 1} forward and {@code -1} backward
+     */
+    synchronized int direction() {
+        return direction >= 0 ? 1 : -1;
+    }
+
+    /**
+     * Stretches {@code window} to reach {@code ahead} images ahead, keeping its proportions.
+     */
+    static Window stretch(Window window, int ahead) {
+        return new Window(window.center, window.direction, ahead, ahead * window.behind / window.ahead);
+    }
+
+    private Window window(int idx) {
+        int ahead = DEFAULT_AHEAD;
+        if (latencyNanos > 0) {
+            ahead = MIN_AHEAD + (int) Math.ceil(latencyNanos / intervalNanos);
+            ahead = Math.max(MIN_AHEAD, Math.min(MAX_AHEAD, ahead));
+        }
+        int behind = (int) Math.round(ahead * (1 - Math.abs(direction)));
+        behind = Math.max(MIN_BEHIND, Math.min(ahead, behind));
+        return new Window(idx, direction(), ahead, behind);
+    }
+}
@@ -0,0 +1,134 @@
+package kk.imageviewer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Unbounded work queue of directory indices that hands out the pending index closest to the last
+ * request first, preferring indices ahead in the scroll direction over equally distant ones behind.
+ * <p>
+ * Priorities are not fixed at submission, every {@link #reprioritise} moves the centre and drops
+ * the pending indices that went stale, so nothing outdated is ever handed to a worker.
+ */
+class PriorityScheduler {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Set<Integer> pending = new HashSet<>();
+    private int center = 0;
+    private int direction = 1;
+
+    /**
+     * Moves the centre of the priorities and removes the pending indices {@code keep} rejects.
+     *
+     * @param direction {@code 1} when scrolling forward, {@code -1} backward
+     * @return the removed indices
+     */
+    List<Integer> reprioritise(int center, int direction, IntPredicate keep) {
+        List<Integer> removed = new ArrayList<>();
+        lock.lock();
+        try {
+            this.center = center;
+            this.direction = direction;
+            Iterator<Integer> it = pending.iterator();
+            while (it.hasNext()) {
+                int idx = it.next();
+                if (!keep.test(idx)) {
+                    it.remove();
+                    removed.add(idx);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Adds {@code idx} to the pending indices, never blocks.
+     */
+    void submit(int idx) {
+        lock.lock();
+        try {
+            if (pending.add(idx))
+                notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the pending index of the highest priority, waiting for one if necessary.
+     */
+    int take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty())
+                notEmpty.await();
+            int best = 0;
+            int bestCost = Integer.MAX_VALUE;
+            for (int idx : pending) {
+                int cost = cost(idx);
+                if (cost < bestCost) {
+                    best = idx;
+                    bestCost = cost;
+                }
+            }
+            pending.remove(best);
+            return best;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the pending indices and the centre after the directory index shifted, dropping the
+     * indices {@code remap} maps to a negative one.
+     */
+    void remap(IntUnaryOperator remap) {
+        lock.lock();
+        try {
+            List<Integer> remapped = new ArrayList<>(pending.size());
+            for (int idx : pending) {
+                int to = remap.applyAsInt(idx);
+                if (to >= 0)
+                    remapped.add(to);
+            }
+            pending.clear();
+            pending.addAll(remapped);
+            center = Math.max(0, remap.applyAsInt(center));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int cost(int idx) {
+        int offset = idx - center;
+        int distance = Math.abs(offset);
+        return offset * direction >= 0 ? 2 * distance : 2 * distance + 1;
+    }
+}
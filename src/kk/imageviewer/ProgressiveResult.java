@@ -0,0 +1,39 @@
+package kk.imageviewer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stream of progressively better results for one requested image. A result is only published if
+ * its {@link ImageManager.Quality} is better than the one published before, so subscribers see the
+ * qualities in ascending order, ending with {@link ImageManager.Quality#FINAL}.
+ * <p>
+ * Subscribers are called on the publishing loader thread and should hand the result off quickly.
+ */
+public final class ProgressiveResult {
+    private final List<Consumer<ImageManager.ImageResult>> subscribers = new ArrayList<>();
+    private ImageManager.ImageResult latest;
+
+    /**
+     * Subscribes to all following results, and is called with the latest one right away if there is one.
+     */
+    public synchronized void subscribe(Consumer<ImageManager.ImageResult> subscriber) {
+        subscribers.add(subscriber);
+        if (latest != null)
+            subscriber.accept(latest);
+    }
+
+    public synchronized ImageManager.ImageResult latest() {
+        return latest;
+    }
+
+    synchronized boolean publish(ImageManager.ImageResult result) {
+        if (latest != null && latest.quality().compareTo(result.quality()) >= 0)
+            return false;
+        latest = result;
+        for (Consumer<ImageManager.ImageResult> subscriber : subscribers)
+            subscriber.accept(result);
+        return true;
+    }
+}
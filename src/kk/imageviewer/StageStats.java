@@ -0,0 +1,56 @@
+package kk.imageviewer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput counters of one stage of the image loading pipeline. Busy time is summed over all
+ * threads of the stage, so the rates are per thread, not wall clock.
+ */
+public final class StageStats {
+    private final String name;
+    private final LongAdder items = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    StageStats(String name) {
+        this.name = name;
+    }
+
+    void record(long bytes, long nanos) {
+        this.items.increment();
+        this.bytes.add(bytes);
+        this.busyNanos.add(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getItems() {
+        return items.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    public double getItemsPerSecond() {
+        long nanos = getBusyNanos();
+        return nanos == 0 ? 0 : getItems() * 1e9 / nanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        long nanos = getBusyNanos();
+        return nanos == 0 ? 0 : getBytes() * 1e9 / nanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d items, %.1f MB, %.1f items/s, %.1f MB/s",
+                name, getItems(), getBytes() / (1024.0 * 1024), getItemsPerSecond(), getMegabytesPerSecond());
+    }
+}
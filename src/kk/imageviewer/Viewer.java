@@ -7,19 +7,21 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.LogManager;
 
 public class Viewer extends JFrame {
 
     private final ImageManager imageManager;
-    private final AtomicReference<Integer> lastImageIdx = new AtomicReference<>(-1);
     private final AtomicReference<BufferedImage> imgRef = new AtomicReference<>();
+    // the current file is followed by name, the index only says where it was last seen
     private int currentIdx = 0;
     private ImageManager.ImageFutureHandle currentResult;
+    private String shownFileName;
 
     private final JPanel imagePanel = new JPanel(true) {
         @Override
@@ -40,8 +42,12 @@ public class Viewer extends JFrame {
         this.add(imagePanel);
         this.imagePanel.setBackground(Color.BLACK);
         this.setBackground(Color.BLACK);
-        this.imageManager = new ImageManager(directory, 0, 4);
+        // listed in the background, so the first image shows before a large folder is listed
+        this.imageManager = new ImageManager(directory, 0, 0, 0, 4, Runtime.getRuntime().availableProcessors(),
+                ImageManager.ExecutionMode.PLATFORM, FileAccess.LOCAL, true);
         this.currentIdx = 0;
+        // by the time it runs the index may have changed again, so it looks the current file up
+        this.imageManager.addIndexListener(remap -> SwingUtilities.invokeLater(this::indexChanged));
         setupListeners();
     }
 
@@ -52,7 +58,8 @@ public class Viewer extends JFrame {
     }
 
     private boolean isCurrentLoadingInProgress() {
-        return currentResult != null && !currentResult.future().isDone();
+        // a failed load never publishes anything, it must not hold the navigation
+        return currentResult != null && !currentResult.future().isDone() && currentResult.progress().latest() == null;
     }
 
     private void setupListeners() {
@@ -60,7 +67,13 @@ public class Viewer extends JFrame {
             @Override
             public void windowOpened(WindowEvent e) {
                 super.windowOpened(e);
-                load(currentIdx);
+                if (imageManager.getNumberOfImages() > 0)
+                    load(currentIdx);
+            }
+
+            @Override
+            public void windowClosing(WindowEvent e) {
+                imageManager.close();
             }
         });
 
@@ -101,12 +114,13 @@ public class Viewer extends JFrame {
                     case KeyEvent.VK_DELETE -> {
                         if (!e.isShiftDown() || System.currentTimeMillis() - e.getWhen() > 100)
                             break;
-                        if (currentIdx != lastImageIdx.get()) {
-                            System.out.println("index doesn't match!");
+                        if (currentResult == null || !currentResult.fileName().equals(shownFileName)) {
+                            System.out.println("shown file doesn't match!");
                         } else {
-                            System.out.println("deleting " + lastImageIdx);
-                            imageManager.delete(currentResult.idx());
-                            load(currentIdx);
+                            System.out.println("deleting " + shownFileName);
+                            // by name, the index may have shifted under the event; the index
+                            // listener then loads the image that takes its place
+                            imageManager.delete(shownFileName);
                         }
                     }
                 }
@@ -114,40 +128,92 @@ public class Viewer extends JFrame {
         });
     }
 
+    /**
+     * Follows the current file through the changes of the directory index. If it is gone, the one
+     * now at its last index is shown instead.
+     */
+    private void indexChanged() {
+        if (currentResult == null) {
+            // nothing requested yet, the listing just found the first files
+            if (isShowing() && imageManager.getNumberOfImages() > 0)
+                load(currentIdx);
+            return;
+        }
+        if (currentIndex() >= 0)
+            return;
+        currentIdx = Math.min(currentIdx, imageManager.getNumberOfImages() - 1);
+        if (currentIdx >= 0)
+            load(currentIdx);
+    }
+
+    /**
+     * @return the index of the current file now, or {@code -1} if it is gone
+     */
+    private int currentIndex() {
+        if (currentResult == null)
+            return currentIdx;
+        int idx = imageManager.indexOf(currentResult.fileName());
+        if (idx >= 0)
+            currentIdx = idx;
+        return idx;
+    }
+
     private void reload() {
-        load(currentIdx);
+        int idx = currentIndex();
+        if (idx >= 0)
+            load(idx);
     }
 
     private void load(int idx) {
         if (this.currentResult != null)
             currentResult.future().cancel(false);
         ImageManager.ImageFutureHandle result = imageManager.loadImage(idx, imagePanel.getWidth(), imagePanel.getHeight());
+        currentIdx = idx;
         currentResult = result;
         this.setTitle(result.fileName() + " loading...");
         int a = 213;
-        result.future().thenAcceptAsync(res -> {
-            if (!Objects.equals(res.fileName(), currentResult.fileName())) {
-                System.out.println("filenames not equal");
-                return;
-            }
-            imgRef.set(res.image());
-            lastImageIdx.set(res.indexInDir());
-            this.setTitle(res.fileName());
-            try {
-                SwingUtilities.invokeAndWait(imagePanel::repaint);
-            } catch (InterruptedException | InvocationTargetException e) {
-                throw new RuntimeException(e);
-            }
+        // results are published in ascending quality, invokeLater keeps that order on the EDT
+        result.progress().subscribe(res -> SwingUtilities.invokeLater(() -> show(result, res)));
+        result.future().whenComplete((res, e) -> {
+            if (e != null && !(e instanceof CancellationException))
+                SwingUtilities.invokeLater(() -> showError(result, e));
         });
     }
 
+    private void showError(ImageManager.ImageFutureHandle handle, Throwable e) {
+        if (handle != currentResult)
+            return;
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        this.setTitle(handle.fileName() + " (failed: "
+                + Objects.requireNonNullElse(cause.getMessage(), cause.getClass().getSimpleName()) + ")");
+    }
+
+    private void show(ImageManager.ImageFutureHandle handle, ImageManager.ImageResult res) {
+        if (handle != currentResult)
+            return;
+        if (!Objects.equals(res.fileName(), currentResult.fileName())) {
+            System.out.println("filenames not equal");
+            return;
+        }
+        imgRef.set(res.image());
+        shownFileName = res.fileName();
+        Dimension size = imageManager.getImageSize(currentIndex());
+        if (res.quality() == ImageManager.Quality.FINAL)
+            this.setTitle(size == null ? res.fileName() : res.fileName() + " (" + size.width + "x" + size.height + ")");
+        else
+            this.setTitle(res.fileName() + " (" + res.quality().name().toLowerCase() + ")");
+        imagePanel.repaint();
+    }
+
     private void loadNext() {
+        currentIndex();
         if (currentIdx >= imageManager.getNumberOfImages() - 1)
             return;
         load(++currentIdx);
     }
 
     private void loadPrev() {
+        currentIndex();
         if (currentIdx <= 0)
             return;
         load(--currentIdx);
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the rows of a target image into horizontal bands and runs an
+ * operation on them in a {@link ForkJoinPool}.
+ * <p/>
+ * The rows are halved recursively until a band is no taller than the target
+ * height divided by twice the parallelism of the pool (but never less than
+ * {@link #MIN_BAND_ROWS}), so idle workers can steal the remaining halves while
+ * the bands stay large enough to keep the per-band overhead small.
+ *
+ * @since 4.3
+ */
+final class ParallelBands {
+    /**
+     * Bands are never split below this many rows.
+     */
+    static final int MIN_BAND_ROWS = 32;
+
+    private ParallelBands() {
+    }
+
+    /**
+     * Operation computing the target rows <code>[from, to)</code>.
+     */
+    interface BandOperation {
+        void apply(int from, int to);
+    }
+
+    /**
+     * Runs <code>operation</code> over the rows <code>[0, rows)</code>, in
+     * bands on <code>pool</code>, or in the calling thread if
+     * <code>pool</code> is <code>null</code> or the image is too small to be
+     * worth splitting. Returns once all bands are done.
+     */
+    static void run(ForkJoinPool pool, int rows, BandOperation operation) {
+        if (pool == null || pool.getParallelism() < 2
+                || rows < 2 * MIN_BAND_ROWS) {
+            operation.apply(0, rows);
+            return;
+        }
+
+        int bandRows = Math.max(MIN_BAND_ROWS,
+                (rows + 2 * pool.getParallelism() - 1)
+                        / (2 * pool.getParallelism()));
+
+        if (Scalr.DEBUG)
+            Scalr.log(2, "Splitting %d rows into bands of up to %d rows", rows,
+                    bandRows);
+
+        pool.invoke(new Band(0, rows, bandRows, operation));
+    }
+
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int bandRows;
+        private final transient BandOperation operation;
+
+        Band(int from, int to, int bandRows, BandOperation operation) {
+            this.from = from;
+            this.to = to;
+            this.bandRows = bandRows;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= bandRows) {
+                operation.apply(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Band(from, middle, bandRows, operation), new Band(
+                    middle, to, bandRows, operation));
+        }
+    }
+}
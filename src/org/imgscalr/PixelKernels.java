@@ -0,0 +1,141 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Per-pixel kernels working directly on the packed <code>int</code> pixels of
+ * {@link BufferedImage#TYPE_INT_RGB} and {@link BufferedImage#TYPE_INT_ARGB}
+ * images, an alternative to the Java2D loops for the hottest operations.
+ * <p/>
+ * The only implementation is <code>org.imgscalr.VectorKernels</code>, built on
+ * the incubating <code>jdk.incubator.vector</code> API. It lives in a separate
+ * source tree (<code>vector/src</code>) because compiling and running it needs
+ * <code>--add-modules jdk.incubator.vector</code>; {@link #load()} finds it at
+ * runtime if it is on the class path and the module is present, and Scalr
+ * keeps using Java2D otherwise.
+ * <p/>
+ * All pixel arrays hold whole images with no padding between rows, see
+ * {@link #pixels(BufferedImage)}. Row ranges <code>[from, to)</code> are
+ * target rows, so the kernels can be run in bands.
+ *
+ * @since 4.3
+ */
+interface PixelKernels {
+    /**
+     * Halves an opaque image in both dimensions, every target pixel the
+     * average of a 2x2 block of source pixels (what bilinear interpolation
+     * computes for an exact halving).
+     */
+    void box2x(int[] src, int srcWidth, int[] dst, int dstWidth, int from,
+               int to);
+
+    /**
+     * Scales an opaque image with bilinear interpolation, sampling like
+     * Java2D: target pixel centres are mapped into the source and the
+     * coordinates are clamped at the edges.
+     */
+    void bilinear(int[] src, int srcWidth, int srcHeight, int[] dst,
+                  int dstWidth, int dstHeight, int from, int to);
+
+    /**
+     * Multiplies the colour channels of <code>length</code> pixels starting at
+     * <code>offset</code> by
+     * <code>scales</code> and adds <code>offsets</code> (both in red, green,
+     * blue order) like {@link java.awt.image.RescaleOp}, keeping alpha.
+     */
+    void rescale(int[] src, int[] dst, int offset, int length,
+                 float[] scales, float[] offsets);
+
+    /**
+     * Converts <code>length</code> pixels starting at <code>offset</code> to
+     * gray, keeping alpha; <code>src</code> and <code>dst</code> may be the
+     * same array. Computes the
+     * luminance of the linearised sRGB values (Rec. 709 weights) and encodes it
+     * back, which approximates the colour-managed conversion of
+     * {@link Scalr#OP_GRAYSCALE} to within a few levels but is not identical.
+     */
+    void gray(int[] src, int[] dst, int offset, int length);
+
+    /**
+     * Convolves an opaque image with a 3x3 <code>kernel</code>; the border
+     * pixels are copied unchanged like {@link java.awt.image.ConvolveOp#EDGE_NO_OP}.
+     */
+    void convolve3x3(int[] src, int[] dst, int width, int height,
+                     float[] kernel, int from, int to);
+
+    /**
+     * @return a short description of the implementation, for logging
+     */
+    String describe();
+
+    /**
+     * @return the vector kernels if {@link Scalr#VECTOR_PROPERTY_NAME} does
+     *         not disable them and they can be loaded, otherwise
+     *         <code>null</code>
+     */
+    static PixelKernels load() {
+        if (!Boolean.parseBoolean(System.getProperty(
+                Scalr.VECTOR_PROPERTY_NAME, "true")))
+            return null;
+        try {
+            PixelKernels kernels = (PixelKernels) Class
+                    .forName("org.imgscalr.VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            if (Scalr.DEBUG)
+                Scalr.log(0, "Using pixel kernels: %s", kernels.describe());
+            return kernels;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            if (Scalr.DEBUG)
+                Scalr.log(0, "Vector kernels not available, using Java2D: %s",
+                        e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the pixel array of <code>img</code> if it is a
+     * {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+     * image whose pixels start at index 0 without padding between rows (that
+     * is, not a sub-image).
+     * <p/>
+     * Taking the array makes Java2D stop managing (accelerating) the image,
+     * use on interim and freshly created images only.
+     *
+     * @return the pixels, or <code>null</code> if <code>img</code> does not
+     *         qualify
+     */
+    static int[] pixels(BufferedImage img) {
+        int type = img.getType();
+        if (type != BufferedImage.TYPE_INT_RGB
+                && type != BufferedImage.TYPE_INT_ARGB)
+            return null;
+        WritableRaster raster = img.getRaster();
+        if (raster.getParent() != null
+                || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || ((SinglePixelPackedSampleModel) raster.getSampleModel())
+                .getScanlineStride() != img.getWidth()
+                || raster.getDataBuffer().getOffset() != 0)
+            return null;
+        return ((DataBufferInt) raster.getDataBuffer()).getData();
+    }
+}
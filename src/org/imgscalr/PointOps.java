@@ -0,0 +1,216 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ByteLookupTable;
+import java.awt.image.LookupOp;
+import java.awt.image.LookupTable;
+import java.awt.image.RescaleOp;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of point-wise {@link BufferedImageOp}s fused into a single per-pixel
+ * pass, see {@link Scalr#apply}.
+ * <p/>
+ * {@link RescaleOp}s and {@link LookupOp}s with a {@link ByteLookupTable} that
+ * leave alpha alone become one lookup table per colour channel, and
+ * consecutive tables are composed into one, so any number of them costs a
+ * single lookup per channel. {@link Scalr#OP_GRAYSCALE} is fused only if the
+ * {@link Scalr#KERNELS} are enabled, because it is then computed by
+ * {@link PixelKernels#gray} (an approximation of Java2D's conversion the user
+ * opted into); it splits the tables before and after it.
+ * <p/>
+ * The point of fusing is memory traffic, not arithmetic: every op applied on
+ * its own reads and writes the whole image, while a fused run reads and
+ * writes every pixel once, applying all steps while a row is in the cache.
+ * Fused runs can also be applied to the rows of a scale or convolution pass
+ * right after they are computed, saving that pass's write and re-read too.
+ *
+ * @since 4.3
+ */
+final class PointOps {
+    /**
+     * Rows computed by a pass before the fused ops are applied to them, few
+     * enough for a strip of a large image to stay in the cache.
+     */
+    static final int STRIP_ROWS = 16;
+
+    /**
+     * The steps in order: lookup tables indexed by channel (red, green, blue)
+     * and value, or <code>null</code> for a conversion to gray.
+     */
+    private final List<int[][]> steps = new ArrayList<int[][]>();
+    private int size = 0;
+
+    private PointOps() {
+    }
+
+    /**
+     * @return <code>true</code> if <code>op</code> can be fused
+     */
+    static boolean isPointOp(BufferedImageOp op) {
+        if (op instanceof RescaleOp) {
+            int factors = ((RescaleOp) op).getNumFactors();
+            return factors == 1 || factors == 3;
+        }
+        if (op instanceof LookupOp) {
+            LookupTable table = ((LookupOp) op).getTable();
+            if (!(table instanceof ByteLookupTable) || table.getOffset() != 0
+                    || (table.getNumComponents() != 1
+                    && table.getNumComponents() != 3))
+                return false;
+            for (byte[] channel : ((ByteLookupTable) table).getTable()) {
+                if (channel.length < 256)
+                    return false;
+            }
+            return true;
+        }
+        return op == Scalr.OP_GRAYSCALE && Scalr.KERNELS != null;
+    }
+
+    /**
+     * @return the index after the run of point ops (and <code>null</code>s)
+     *         starting at <code>from</code>, <code>from</code> if there is
+     *         none
+     */
+    static int runEnd(BufferedImageOp[] ops, int from) {
+        int end = from;
+        while (end < ops.length && (ops[end] == null || isPointOp(ops[end])))
+            end++;
+        return end;
+    }
+
+    /**
+     * @return the point ops in <code>ops[from, to)</code> fused, skipping
+     *         <code>null</code>s; all others must be point ops
+     */
+    static PointOps fuse(BufferedImageOp[] ops, int from, int to) {
+        PointOps fused = new PointOps();
+        for (int i = from; i < to; i++) {
+            if (ops[i] != null)
+                fused.add(ops[i]);
+        }
+        return fused;
+    }
+
+    /**
+     * @return the number of ops fused
+     */
+    int size() {
+        return size;
+    }
+
+    private void add(BufferedImageOp op) {
+        size++;
+        if (op == Scalr.OP_GRAYSCALE) {
+            steps.add(null);
+            return;
+        }
+
+        int[][] table = op instanceof RescaleOp ? table((RescaleOp) op)
+                : table((LookupOp) op);
+        int last = steps.size() - 1;
+        if (last >= 0 && steps.get(last) != null)
+            steps.set(last, compose(steps.get(last), table));
+        else
+            steps.add(table);
+    }
+
+    /**
+     * Same arithmetic as {@link RescaleOp} on 8-bit samples: scaled, offset,
+     * truncated and clamped.
+     */
+    private static int[][] table(RescaleOp op) {
+        float[] scales = op.getScaleFactors(null);
+        float[] offsets = op.getOffsets(null);
+        int[][] table = new int[3][256];
+        for (int c = 0; c < 3; c++) {
+            float scale = scales[scales.length == 1 ? 0 : c];
+            float offset = offsets[offsets.length == 1 ? 0 : c];
+            for (int v = 0; v < 256; v++) {
+                float value = v * scale + offset;
+                table[c][v] = value <= 0 ? 0 : (value >= 255 ? 255
+                        : (int) value);
+            }
+        }
+        return table;
+    }
+
+    private static int[][] table(LookupOp op) {
+        byte[][] data = ((ByteLookupTable) op.getTable()).getTable();
+        int[][] table = new int[3][256];
+        for (int c = 0; c < 3; c++) {
+            byte[] channel = data[data.length == 1 ? 0 : c];
+            for (int v = 0; v < 256; v++)
+                table[c][v] = channel[v] & 0xFF;
+        }
+        return table;
+    }
+
+    private static int[][] compose(int[][] first, int[][] second) {
+        int[][] table = new int[3][256];
+        for (int c = 0; c < 3; c++) {
+            for (int v = 0; v < 256; v++)
+                table[c][v] = second[c][first[c][v]];
+        }
+        return table;
+    }
+
+    /**
+     * Applies the fused ops in place to <code>length</code> ARGB pixels
+     * starting at <code>offset</code>, keeping alpha.
+     */
+    void filter(int[] pixels, int offset, int length) {
+        for (int[][] table : steps) {
+            if (table == null) {
+                Scalr.KERNELS.gray(pixels, pixels, offset, length);
+                continue;
+            }
+            int[] r = table[0];
+            int[] g = table[1];
+            int[] b = table[2];
+            for (int i = offset, end = offset + length; i < end; i++) {
+                int p = pixels[i];
+                pixels[i] = (p & 0xFF000000) | (r[(p >> 16) & 0xFF] << 16)
+                        | (g[(p >> 8) & 0xFF] << 8) | b[p & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * Applies the fused ops to the rows <code>[from, to)</code> of
+     * <code>src</code>, writing them to the same rows of <code>dest</code>
+     * (which may be <code>src</code>). Both must be
+     * {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+     * images of the same size; the rows are copied through the rasters, so
+     * neither image stops being managed by Java2D.
+     */
+    void filterRows(BufferedImage src, BufferedImage dest, int from, int to) {
+        int width = src.getWidth();
+        int[] row = new int[width];
+        WritableRaster srcRaster = src.getRaster();
+        WritableRaster destRaster = dest.getRaster();
+        for (int y = from; y < to; y++) {
+            srcRaster.getDataElements(0, y, width, 1, row);
+            filter(row, 0, width);
+            destRaster.setDataElements(0, y, width, 1, row);
+        }
+    }
+}
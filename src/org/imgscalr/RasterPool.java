@@ -0,0 +1,166 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of the <code>int[]</code> pixel arrays behind the interim images of
+ * {@link Scalr#scaleImageIncrementally} and {@link Scalr#apply}.
+ * <p/>
+ * Both optimal image types ({@link BufferedImage#TYPE_INT_RGB} and
+ * {@link BufferedImage#TYPE_INT_ARGB}) keep their pixels in a single
+ * <code>int[]</code>, so the arrays are pooled by size class only and can back
+ * an interim image of either type. Size classes are a quarter of a power of
+ * two apart, an array is never more than 25% larger than requested.
+ * <p/>
+ * The pool retains at most {@link #MAX_RETAINED_BYTES}; arrays returned beyond
+ * that are left to the GC. Images wrapping a pooled array are not hardware
+ * accelerated by Java2D, which is why only interim images are pooled and the
+ * results handed to the caller are always newly allocated.
+ *
+ * @since 4.3
+ */
+final class RasterPool {
+    /**
+     * Maximum number of bytes the pool retains, set by the
+     * {@link Scalr#RASTER_POOL_MAX_BYTES_PROPERTY_NAME} system property. The
+     * default is 1/16th of the maximum heap size, <code>0</code> disables the
+     * pool.
+     */
+    static final long MAX_RETAINED_BYTES = Long.getLong(
+            Scalr.RASTER_POOL_MAX_BYTES_PROPERTY_NAME, Runtime.getRuntime()
+                    .maxMemory() / 16);
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final int[] RGB_MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF};
+    private static final int[] ARGB_MASKS = {0x00FF0000, 0x0000FF00,
+            0x000000FF, 0xFF000000};
+    private static final ColorModel RGB_MODEL = new DirectColorModel(24,
+            RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2], 0);
+    private static final ColorModel ARGB_MODEL = ColorModel.getRGBdefault();
+
+    private static final Map<Integer, ArrayDeque<int[]>> FREE = new HashMap<Integer, ArrayDeque<int[]>>();
+    private static long retainedBytes = 0;
+
+    private RasterPool() {
+    }
+
+    /**
+     * @return an array of at least <code>size</code> elements, with undefined
+     *         contents
+     */
+    static int[] borrow(int size) {
+        int capacity = capacity(size);
+        synchronized (FREE) {
+            ArrayDeque<int[]> arrays = FREE.get(capacity);
+            if (arrays != null && !arrays.isEmpty()) {
+                int[] array = arrays.pop();
+                retainedBytes -= 4L * array.length;
+                return array;
+            }
+        }
+        return new int[capacity];
+    }
+
+    /**
+     * Returns <code>array</code> to the pool. It must not be used afterwards.
+     */
+    static void release(int[] array) {
+        if (array.length != capacity(array.length))
+            return;
+        synchronized (FREE) {
+            if (retainedBytes + 4L * array.length > MAX_RETAINED_BYTES)
+                return;
+            ArrayDeque<int[]> arrays = FREE.get(array.length);
+            if (arrays == null) {
+                arrays = new ArrayDeque<int[]>();
+                FREE.put(array.length, arrays);
+            }
+            arrays.push(array);
+            retainedBytes += 4L * array.length;
+        }
+    }
+
+    /**
+     * @return the smallest size class holding <code>size</code> elements
+     */
+    static int capacity(int size) {
+        if (size <= MIN_CAPACITY)
+            return MIN_CAPACITY;
+        int high = Integer.highestOneBit(size - 1);
+        int step = high / 4;
+        return (int) Math.min(Integer.MAX_VALUE, ((long) (size - 1) / step + 1)
+                * step);
+    }
+
+    /**
+     * @return a {@link BufferedImage#TYPE_INT_RGB} or
+     *         {@link BufferedImage#TYPE_INT_ARGB} image using the first
+     *         <code>width * height</code> elements of <code>array</code> as
+     *         its pixels
+     */
+    static BufferedImage wrap(int[] array, int width, int height,
+                              boolean alpha) {
+        DataBufferInt buffer = new DataBufferInt(array, width * height);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width,
+                height, width, alpha ? ARGB_MASKS : RGB_MASKS, null);
+        return new BufferedImage(alpha ? ARGB_MODEL : RGB_MODEL, raster,
+                false, null);
+    }
+
+    /**
+     * Scratch buffer for one interim image at a time, growing as needed. Two
+     * of them used in turns ("ping-pong") cover any chain of interim images:
+     * the next image is always drawn into the buffer the current one is not
+     * in.
+     */
+    static final class Scratch {
+        private int[] array;
+
+        /**
+         * @return an image backed by this buffer, replacing the image handed
+         *         out before
+         */
+        BufferedImage image(int width, int height, boolean alpha) {
+            int size = width * height;
+            if (array == null || array.length < size) {
+                release();
+                array = borrow(size);
+            }
+            return wrap(array, width, height, alpha);
+        }
+
+        /**
+         * Returns the buffer to the pool, images handed out must not be used
+         * afterwards.
+         */
+        void release() {
+            if (array != null)
+                RasterPool.release(array);
+            array = null;
+        }
+    }
+}
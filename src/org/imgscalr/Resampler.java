@@ -0,0 +1,343 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Separable convolution resampler backing {@link Scalr.Method#SEPARABLE}.
+ * <p/>
+ * The image is scaled by two 1-dimensional passes, first along the rows into
+ * an intermediate image of the target width, then along the columns into the
+ * result. The filter weights of every target column and row are computed once
+ * up front; when scaling down the filter is stretched by the scale factor so
+ * every source pixel contributes, which is what makes a single pass as good as
+ * many incremental steps.
+ * <p/>
+ * Pixels are read and written as packed ARGB <code>int</code>s one row at a
+ * time. {@link BufferedImage#TYPE_INT_RGB}, {@link BufferedImage#TYPE_INT_ARGB}
+ * and {@link BufferedImage#TYPE_3BYTE_BGR} rows are copied straight out of the
+ * raster, any other type goes through {@link BufferedImage#getRGB}, which is
+ * slower but avoids copying the whole image first. Reading rows instead of
+ * grabbing the backing array also leaves the images managed by Java2D.
+ * <p/>
+ * Translucent pixels are weighted by their alpha, so transparent pixels do not
+ * bleed their (invisible) colour into the edges of opaque ones.
+ * <p/>
+ * {@link StripScaler} runs the same two passes over a source that arrives in
+ * strips of rows.
+ *
+ * @since 4.3
+ */
+final class Resampler {
+    /**
+     * Number of target rows between two checks of the cancellation flag.
+     */
+    private static final int CANCEL_CHECK_ROWS = 16;
+
+    private Resampler() {
+    }
+
+    /**
+     * Filter weights for scaling one dimension: target pixel <code>i</code> is
+     * the sum of <code>count[i]</code> source pixels starting at
+     * <code>first[i]</code>, weighted by
+     * <code>weights[i * stride + k]</code>.
+     */
+    static final class Weights {
+        final int[] first;
+        final int[] count;
+        final float[] weights;
+        final int stride;
+
+        Weights(int srcSize, int dstSize, Scalr.Filter filter) {
+            double scale = (double) dstSize / srcSize;
+            double filterScale = Math.max(1, 1 / scale);
+            double support = filter.support * filterScale;
+
+            this.stride = (int) Math.ceil(2 * support) + 2;
+            this.first = new int[dstSize];
+            this.count = new int[dstSize];
+            this.weights = new float[dstSize * stride];
+
+            for (int i = 0; i < dstSize; i++) {
+                double center = (i + 0.5) / scale;
+                int left = Math.max(0, (int) Math.floor(center - support));
+                int right = Math.min(srcSize, (int) Math.ceil(center + support));
+
+                double sum = 0;
+                int n = 0;
+                for (int j = left; j < right; j++) {
+                    double w = filter.weight((j + 0.5 - center) / filterScale);
+                    weights[i * stride + n++] = (float) w;
+                    sum += w;
+                }
+
+                /*
+                 * Normalize so flat areas keep their value, also at the image
+                 * edges where part of the filter falls outside the image. A
+                 * box filter narrower than the pixel spacing can miss all
+                 * source pixels, take the nearest one then.
+                 */
+                if (sum == 0) {
+                    left = Math.min(srcSize - 1, (int) center);
+                    weights[i * stride] = 1;
+                    n = 1;
+                } else {
+                    for (int k = 0; k < n; k++)
+                        weights[i * stride + k] /= sum;
+                }
+
+                first[i] = left;
+                count[i] = n;
+            }
+        }
+
+        /**
+         * @return the first source index needed for the targets from
+         *         <code>from</code> on
+         */
+        int firstSource(int from) {
+            return first[from];
+        }
+
+        /**
+         * @return the source index after the last one needed for the targets
+         *         in <code>[from, to)</code>
+         */
+        int endSource(int from, int to) {
+            int end = 0;
+            for (int i = from; i < to; i++)
+                end = Math.max(end, first[i] + count[i]);
+            return end;
+        }
+    }
+
+    /**
+     * Scales <code>src</code> to the given dimensions in one pass of each
+     * {@link Weights}, in bands on <code>pool</code> unless it is
+     * <code>null</code>, applying the <code>fused</code> point ops (if not
+     * <code>null</code>) to every target row before it is stored.
+     */
+    static BufferedImage resample(BufferedImage src, int targetWidth,
+                                  int targetHeight, Scalr.Filter filter, BooleanSupplier cancelled,
+                                  ForkJoinPool pool, PointOps fused) throws CancellationException {
+        BufferedImage result = Scalr.createOptimalImage(src, targetWidth,
+                targetHeight);
+        Weights horizontal = new Weights(src.getWidth(), targetWidth, filter);
+        Weights vertical = new Weights(src.getHeight(), targetHeight, filter);
+
+        ParallelBands.run(pool, targetHeight, (from, to) -> resampleBand(src,
+                result, horizontal, vertical, from, to, cancelled, fused));
+
+        return result;
+    }
+
+    /**
+     * Computes the target rows <code>[from, to)</code> of <code>dst</code>.
+     * Only the source rows these need go through the horizontal pass, so bands
+     * can be computed independently (and concurrently) at the cost of
+     * repeating the rows that fall under the filter of two neighbouring bands.
+     */
+    static void resampleBand(BufferedImage src, BufferedImage dst,
+                             Weights horizontal, Weights vertical, int from, int to,
+                             BooleanSupplier cancelled, PointOps fused) throws CancellationException {
+        int srcWidth = src.getWidth();
+        int dstWidth = dst.getWidth();
+        boolean alpha = src.getTransparency() != Transparency.OPAQUE;
+
+        int firstRow = vertical.firstSource(from);
+        int endRow = vertical.endSource(from, to);
+
+        // Horizontal pass over the source rows under this band.
+        int[] row = new int[srcWidth];
+        byte[] bytes = null;
+        int[] intermediate = new int[(endRow - firstRow) * dstWidth];
+        for (int y = firstRow; y < endRow; y++) {
+            if ((y - firstRow) % CANCEL_CHECK_ROWS == 0)
+                checkCancelled(cancelled);
+            bytes = readRow(src, y, row, bytes);
+            convolve(row, horizontal, intermediate, (y - firstRow) * dstWidth,
+                    alpha);
+        }
+
+        // Vertical pass, row by row, accumulating whole intermediate rows.
+        WritableRaster raster = dst.getRaster();
+        VerticalPass pass = new VerticalPass(dstWidth);
+        for (int i = from; i < to; i++) {
+            if ((i - from) % CANCEL_CHECK_ROWS == 0)
+                checkCancelled(cancelled);
+            int[] out = pass.row(vertical, i, intermediate, firstRow,
+                    Integer.MAX_VALUE, alpha);
+            if (fused != null)
+                fused.filter(out, 0, dstWidth);
+            raster.setDataElements(0, i, dstWidth, 1, out);
+        }
+    }
+
+    /**
+     * The vertical pass of one target row at a time, with its accumulators
+     * allocated once.
+     */
+    static final class VerticalPass {
+        private final float[] a;
+        private final float[] r;
+        private final float[] g;
+        private final float[] b;
+        private final int[] out;
+
+        VerticalPass(int width) {
+            a = new float[width];
+            r = new float[width];
+            g = new float[width];
+            b = new float[width];
+            out = new int[width];
+        }
+
+        /**
+         * Computes target row <code>i</code> from the horizontally filtered
+         * source rows in <code>intermediate</code>, where source row
+         * <code>j</code> is at row <code>(j - base) % rows</code>.
+         *
+         * @return the row, valid until the next call
+         */
+        int[] row(Weights vertical, int i, int[] intermediate, int base,
+                  int rows, boolean alpha) {
+            int width = out.length;
+            Arrays.fill(a, 0);
+            Arrays.fill(r, 0);
+            Arrays.fill(g, 0);
+            Arrays.fill(b, 0);
+            int weightBase = i * vertical.stride;
+            for (int k = 0; k < vertical.count[i]; k++) {
+                float w = vertical.weights[weightBase + k];
+                int offset = ((vertical.first[i] + k - base) % rows) * width;
+                for (int x = 0; x < width; x++) {
+                    int p = intermediate[offset + x];
+                    float wa = alpha ? w * (p >>> 24) : w;
+                    a[x] += wa;
+                    r[x] += wa * ((p >> 16) & 0xFF);
+                    g[x] += wa * ((p >> 8) & 0xFF);
+                    b[x] += wa * (p & 0xFF);
+                }
+            }
+            for (int x = 0; x < width; x++)
+                out[x] = pack(a[x], r[x], g[x], b[x], alpha);
+            return out;
+        }
+    }
+
+    /**
+     * Convolves one source row into the intermediate row at
+     * <code>dstOffset</code>.
+     */
+    static void convolve(int[] src, Weights weights, int[] dst,
+                                 int dstOffset, boolean alpha) {
+        for (int i = 0; i < weights.first.length; i++)
+            dst[dstOffset + i] = pixel(src, weights.first[i], weights, i, alpha);
+    }
+
+    private static int pixel(int[] src, int offset, Weights weights, int i,
+                             boolean alpha) {
+        float a = 0, r = 0, g = 0, b = 0;
+        int base = i * weights.stride;
+        int n = weights.count[i];
+
+        if (alpha) {
+            for (int k = 0; k < n; k++) {
+                int p = src[offset + k];
+                float wa = weights.weights[base + k] * (p >>> 24);
+                a += wa;
+                r += wa * ((p >> 16) & 0xFF);
+                g += wa * ((p >> 8) & 0xFF);
+                b += wa * (p & 0xFF);
+            }
+            return pack(a, r, g, b, true);
+        }
+
+        for (int k = 0; k < n; k++) {
+            int p = src[offset + k];
+            float w = weights.weights[base + k];
+            r += w * ((p >> 16) & 0xFF);
+            g += w * ((p >> 8) & 0xFF);
+            b += w * (p & 0xFF);
+        }
+        return pack(1, r, g, b, false);
+    }
+
+    /**
+     * Packs accumulated channels, which are alpha-weighted if
+     * <code>alpha</code> is set, into an ARGB pixel.
+     */
+    private static int pack(float a, float r, float g, float b, boolean alpha) {
+        if (!alpha)
+            return 0xFF000000 | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+        if (a <= 0)
+            return 0;
+        return (clamp(a) << 24) | (clamp(r / a) << 16) | (clamp(g / a) << 8)
+                | clamp(b / a);
+    }
+
+    private static int clamp(float v) {
+        int i = (int) (v + 0.5f);
+        return i < 0 ? 0 : (i > 255 ? 255 : i);
+    }
+
+    /**
+     * Reads row <code>y</code> of <code>src</code> as ARGB pixels.
+     * <code>bytes</code> is scratch space for byte rasters, allocated on first
+     * use.
+     */
+    static byte[] readRow(BufferedImage src, int y, int[] row,
+                                  byte[] bytes) {
+        int type = src.getType();
+        if (type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_ARGB) {
+            src.getRaster().getDataElements(0, y, row.length, 1, row);
+
+            // TYPE_INT_RGB leaves the alpha byte undefined.
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int x = 0; x < row.length; x++)
+                    row[x] |= 0xFF000000;
+            }
+        } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            /*
+             * What ImageIO decodes JPEGs into. The data elements come out in
+             * band order, that is R, G, B.
+             */
+            if (bytes == null)
+                bytes = new byte[row.length * 3];
+            src.getRaster().getDataElements(0, y, row.length, 1, bytes);
+            for (int x = 0, i = 0; x < row.length; x++, i += 3)
+                row[x] = 0xFF000000 | ((bytes[i] & 0xFF) << 16)
+                        | ((bytes[i + 1] & 0xFF) << 8) | (bytes[i + 2] & 0xFF);
+        } else
+            src.getRGB(0, y, row.length, 1, row, 0, row.length);
+        return bytes;
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled)
+            throws CancellationException {
+        if (cancelled != null && cancelled.getAsBoolean())
+            throw new CancellationException("resampling cancelled");
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.imgscalr;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
@@ -35,6 +36,11 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.Kernel;
 import java.awt.image.RasterFormatException;
 import java.awt.image.RescaleOp;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 
 import javax.imageio.ImageIO;
 
@@ -215,6 +221,38 @@ public class Scalr {
      */
     public static final String LOG_PREFIX_PROPERTY_NAME = "imgscalr.logPrefix";
 
+    /**
+     * System property name used to define the maximum number of bytes the pool
+     * of interim image buffers retains between operations.
+     * <p/>
+     * Value is "<code>imgscalr.rasterPool.maxBytes</code>".
+     * <p/>
+     * This property can be set on startup with:<br/>
+     * <code>
+     * -Dimgscalr.rasterPool.maxBytes=&lt;BYTES&gt;
+     * </code>; <code>0</code> disables pooling. Default value is 1/16th of the
+     * maximum heap size.
+     *
+     * @since 4.3
+     */
+    public static final String RASTER_POOL_MAX_BYTES_PROPERTY_NAME = "imgscalr.rasterPool.maxBytes";
+
+    /**
+     * System property name used to enable or disable the vector (SIMD) pixel
+     * kernels, see {@link PixelKernels}. The kernels are only used if
+     * <code>org.imgscalr.VectorKernels</code> is on the class path and the JVM
+     * was started with <code>--add-modules jdk.incubator.vector</code>.
+     * <p/>
+     * This property can be set on startup with:<br/>
+     * <code>
+     * -Dimgscalr.vector=false
+     * </code> to keep using the Java2D operations. Default value is
+     * <code>true</code>.
+     *
+     * @since 4.3
+     */
+    public static final String VECTOR_PROPERTY_NAME = "imgscalr.vector";
+
     /**
      * Flag used to indicate if debugging output has been enabled by setting the
      * "<code>imgscalr.debug</code>" system property to <code>true</code>. This
@@ -249,6 +287,21 @@ public class Scalr {
     public static final String LOG_PREFIX = System.getProperty(
             LOG_PREFIX_PROPERTY_NAME, "[imgscalr] ");
 
+    /**
+     * The vector pixel kernels, or <code>null</code> if they are disabled or
+     * not available. Declared after {@link #DEBUG} and {@link #LOG_PREFIX}
+     * because loading them logs.
+     */
+    static final PixelKernels KERNELS = PixelKernels.load();
+
+    /**
+     * Width and height of the blocks {@link #rotate} moves pixels in, see
+     * {@link #rotateInBlocks}.
+     *
+     * @since 4.3
+     */
+    private static final int ROTATE_BLOCK_SIZE = 64;
+
     /**
      * A {@link ConvolveOp} using a very light "blur" kernel that acts like an
      * anti-aliasing filter (softens the image a bit) when applied to an image.
@@ -411,7 +464,96 @@ public class Scalr {
          * jagged with some of the other {@link Method}s (even
          * {@link Method#QUALITY}).
          */
-        ULTRA_QUALITY;
+        ULTRA_QUALITY,
+        /**
+         * Used to indicate that the scaling implementation should scale the
+         * image in a single pass of a separable convolution (one pass along the
+         * rows, one along the columns) with a {@link Filter#LANCZOS3} filter,
+         * instead of the repeated Java2D redraws of {@link Method#QUALITY} and
+         * {@link Method#ULTRA_QUALITY}.
+         * <p/>
+         * The filter is stretched over all source pixels that fall under a
+         * target pixel, so the result is at least as sharp and alias-free as
+         * {@link Method#ULTRA_QUALITY} while touching every source pixel only
+         * once. It runs in plain Java on the pixel data, it is not hardware
+         * accelerated. Use
+         * {@link Scalr#scaleImageSeparable(BufferedImage, int, int, Filter)}
+         * to choose another {@link Filter}.
+         *
+         * @since 4.3
+         */
+        SEPARABLE;
+    }
+
+    /**
+     * Used to define the filters {@link Method#SEPARABLE} can weight the
+     * source pixels with.
+     *
+     * @since 4.3
+     */
+    public static enum Filter {
+        /**
+         * Plain average of the source pixels under a target pixel. Fastest, but
+         * aliases on fine detail.
+         */
+        BOX(0.5) {
+            @Override
+            double weight(double x) {
+                return (x >= -0.5 && x < 0.5) ? 1 : 0;
+            }
+        },
+        /**
+         * Mitchell-Netravali cubic (B = C = 1/3), a compromise between
+         * sharpness and ringing; a little softer than {@link #LANCZOS3}.
+         */
+        MITCHELL(2) {
+            @Override
+            double weight(double x) {
+                final double b = 1.0 / 3, c = 1.0 / 3;
+                x = Math.abs(x);
+                if (x < 1)
+                    return ((12 - 9 * b - 6 * c) * x * x * x
+                            + (-18 + 12 * b + 6 * c) * x * x + (6 - 2 * b)) / 6;
+                if (x < 2)
+                    return ((-b - 6 * c) * x * x * x + (6 * b + 30 * c) * x * x
+                            + (-12 * b - 48 * c) * x + (8 * b + 24 * c)) / 6;
+                return 0;
+            }
+        },
+        /**
+         * Windowed sinc over 3 lobes, the sharpest of the filters; may show a
+         * faint halo along hard edges.
+         */
+        LANCZOS3(3) {
+            @Override
+            double weight(double x) {
+                if (x <= -3 || x >= 3)
+                    return 0;
+                return sinc(x) * sinc(x / 3);
+            }
+        };
+
+        /**
+         * Radius of the filter in (target) pixels.
+         */
+        final double support;
+
+        private Filter(double support) {
+            this.support = support;
+        }
+
+        /**
+         * @return the weight of a pixel <code>x</code> (target) pixels away
+         *         from the centre of the target pixel.
+         */
+        abstract double weight(double x);
+
+        private static double sinc(double x) {
+            if (x == 0)
+                return 1;
+            x *= Math.PI;
+            return Math.sin(x) / x;
+        }
     }
 
     /**
@@ -658,79 +800,148 @@ public class Scalr {
             log(0, "Applying %d BufferedImageOps...", ops.length);
 
         boolean hasReassignedSrc = false;
+        boolean srcIsScratch = false;
 
-        for (int i = 0; i < ops.length; i++) {
-            long subT = -1;
-            if (DEBUG)
-                subT = System.currentTimeMillis();
-            BufferedImageOp op = ops[i];
+        /*
+         * The results of all but the last op are interim images; like in
+         * scaleImageIncrementally they are drawn into two pooled scratch
+         * buffers in turns, and only the final result is newly allocated.
+         */
+        int lastOp = ops.length - 1;
+        while (lastOp > 0 && ops[lastOp] == null)
+            lastOp--;
+        RasterPool.Scratch[] scratch = { new RasterPool.Scratch(),
+                new RasterPool.Scratch() };
+        int nextScratch = 0;
+
+        try {
+            for (int i = 0; i < ops.length; i++) {
+                long subT = -1;
+                if (DEBUG)
+                    subT = System.currentTimeMillis();
+                BufferedImageOp op = ops[i];
 
-            // Skip null ops instead of throwing an exception.
-            if (op == null)
-                continue;
+                // Skip null ops instead of throwing an exception.
+                if (op == null)
+                    continue;
 
-            if (DEBUG)
-                log(1, "Applying BufferedImageOp [class=%s, toString=%s]...",
-                        op.getClass(), op.toString());
+                if (DEBUG)
+                    log(1, "Applying BufferedImageOp [class=%s, toString=%s]...",
+                            op.getClass(), op.toString());
 
-            /*
-             * Must use op.getBounds instead of src.getWidth and src.getHeight
-             * because we are trying to create an image big enough to hold the
-             * result of this operation (which may be to scale the image
-             * smaller), in that case the bounds reported by this op and the
-             * bounds reported by the source image will be different.
-             */
-            Rectangle2D resultBounds = op.getBounds2D(src);
+                /*
+                 * A run of 2 or more point ops (see PointOps) is applied in one
+                 * pass. A run following a convolution the kernels compute is
+                 * applied inside the convolution pass. 'next' is the index after
+                 * the ops handled in this iteration.
+                 */
+                PointOps fused = null;
+                boolean fusedOnly = PointOps.isPointOp(op);
+                int next = i + 1;
+                if (fusedOnly || isKernelConvolution(op, src)) {
+                    int runEnd = PointOps.runEnd(ops, i + 1);
+                    PointOps run = PointOps.fuse(ops, fusedOnly ? i : i + 1,
+                            runEnd);
+                    if (run.size() >= (fusedOnly ? 2 : 1)) {
+                        fused = run;
+                        next = runEnd;
+                    }
+                }
+
+                if (DEBUG && fused != null)
+                    log(1, "Fusing %d point ops into %s", fused.size(),
+                            fusedOnly ? "one pass" : "the convolution pass");
 
-            // Watch out for flaky/misbehaving ops that fail to work right.
-            if (resultBounds == null)
-                throw new ImagingOpException(
-                        "BufferedImageOp ["
-                                + op.toString()
-                                + "] getBounds2D(src) returned null bounds for the target image; this should not happen and indicates a problem with application of this type of op.");
+                /*
+                 * Must use op.getBounds instead of src.getWidth and src.getHeight
+                 * because we are trying to create an image big enough to hold the
+                 * result of this operation (which may be to scale the image
+                 * smaller), in that case the bounds reported by this op and the
+                 * bounds reported by the source image will be different.
+                 */
+                Rectangle2D resultBounds = op.getBounds2D(src);
 
-            /*
-             * We must manually create the target image; we cannot rely on the
-             * null-destination filter() method to create a valid destination
-             * for us thanks to this JDK bug that has been filed for almost a
-             * decade:
-             * http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4965606
-             */
-            BufferedImage dest = createOptimalImage(src,
-                    (int) Math.round(resultBounds.getWidth()),
-                    (int) Math.round(resultBounds.getHeight()));
+                // Watch out for flaky/misbehaving ops that fail to work right.
+                if (resultBounds == null)
+                    throw new ImagingOpException(
+                            "BufferedImageOp ["
+                                    + op.toString()
+                                    + "] getBounds2D(src) returned null bounds for the target image; this should not happen and indicates a problem with application of this type of op.");
 
-            // Perform the operation, update our result to return.
-            BufferedImage result = op.filter(src, dest);
+                /*
+                 * We must manually create the target image; we cannot rely on the
+                 * null-destination filter() method to create a valid destination
+                 * for us thanks to this JDK bug that has been filed for almost a
+                 * decade:
+                 * http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4965606
+                 */
+                int destWidth = (int) Math.round(resultBounds.getWidth());
+                int destHeight = (int) Math.round(resultBounds.getHeight());
+                boolean last = next > lastOp;
+                BufferedImage dest;
+                if (last)
+                    dest = createOptimalImage(src, destWidth, destHeight);
+                else {
+                    if (destWidth <= 0 || destHeight <= 0)
+                        throw new IllegalArgumentException("width [" + destWidth
+                                + "] and height [" + destHeight + "] must be > 0");
+                    dest = scratch[nextScratch].image(destWidth, destHeight,
+                            src.getTransparency() != Transparency.OPAQUE);
+                }
+
+                // Perform the operation, update our result to return.
+                BufferedImage result;
+                if (fusedOnly && fused != null) {
+                    fused.filterRows(src, dest, 0, destHeight);
+                    result = dest;
+                } else if (applyWithKernels(op, src, srcIsScratch, dest, !last,
+                        fused))
+                    result = dest;
+                else {
+                    result = op.filter(src, dest);
+                    if (fused != null)
+                        fused.filterRows(result, result, 0, result.getHeight());
+                }
 
-            /*
-             * Flush the 'src' image ONLY IF it is one of our interim temporary
-             * images being used when applying 2 or more operations back to
-             * back. We never want to flush the original image passed in.
-             */
-            if (hasReassignedSrc)
-                src.flush();
+                /*
+                 * Flush the 'src' image ONLY IF it is one of our interim temporary
+                 * images being used when applying 2 or more operations back to
+                 * back. We never want to flush the original image passed in.
+                 * Scratch images are not flushed, their buffers are reused.
+                 */
+                if (hasReassignedSrc && !srcIsScratch)
+                    src.flush();
 
-            /*
-             * Incase there are more operations to perform, update what we
-             * consider the 'src' reference to our last result so on the next
-             * iteration the next op is applied to this result and not back
-             * against the original src passed in.
-             */
-            src = result;
+                /*
+                 * Incase there are more operations to perform, update what we
+                 * consider the 'src' reference to our last result so on the next
+                 * iteration the next op is applied to this result and not back
+                 * against the original src passed in.
+                 */
+                src = result;
+                srcIsScratch = (!last && result == dest);
+                if (srcIsScratch)
+                    nextScratch ^= 1;
 
-            /*
-             * Keep track of when we re-assign 'src' to an interim temporary
-             * image, so we know when we can explicitly flush it and clean up
-             * references on future iterations.
-             */
-            hasReassignedSrc = true;
+                /*
+                 * Keep track of when we re-assign 'src' to an interim temporary
+                 * image, so we know when we can explicitly flush it and clean up
+                 * references on future iterations.
+                 */
+                hasReassignedSrc = true;
 
-            if (DEBUG)
-                log(1,
-                        "Applied BufferedImageOp in %d ms, result [width=%d, height=%d]",
-                        System.currentTimeMillis() - subT, result.getWidth(),
-                        result.getHeight());
+                if (DEBUG)
+                    log(1,
+                            "Applied BufferedImageOp in %d ms, result [width=%d, height=%d]",
+                            System.currentTimeMillis() - subT, result.getWidth(),
+                            result.getHeight());
+
+                // Skip the ops fused into this one.
+                i = next - 1;
+            }
+        } finally {
+            scratch[0].release();
+            scratch[1].release();
         }
 
         if (DEBUG)
@@ -869,6 +1080,24 @@ public class Scalr {
                     "Cropping Image [width=%d, height=%d] to [x=%d, y=%d, width=%d, height=%d]...",
                     srcWidth, srcHeight, x, y, width, height);
 
+        /*
+         * The ops render into a new image anyway, so apply them to a view of
+         * the region instead of copying it out first. Only for opaque sources:
+         * the copy below is drawn with SrcOver, which rounds translucent pixels
+         * through premultiplied alpha, and the ops must keep seeing those.
+         */
+        if (containsOp(ops) && width > 0 && height > 0
+                && src.getTransparency() == Transparency.OPAQUE) {
+            BufferedImage result = apply(src.getSubimage(x, y, width, height),
+                    ops);
+
+            if (DEBUG)
+                log(0, "Cropped Image (ops applied to a view) in %d ms",
+                        System.currentTimeMillis() - t);
+
+            return result;
+        }
+
         // Create a target image of an optimal type to render into.
         BufferedImage result = createOptimalImage(src, width, height);
         Graphics g = result.getGraphics();
@@ -892,6 +1121,86 @@ public class Scalr {
         return result;
     }
 
+    /**
+     * Used to get a view of a region of the given <code>src</code> image
+     * without copying any pixels, as opposed to
+     * {@link #crop(BufferedImage, int, int, int, int, BufferedImageOp...)}
+     * which renders the region into a new image.
+     * <p/>
+     * <strong>NOTE</strong>: The view shares its pixels with <code>src</code>
+     * (it is {@link BufferedImage#getSubimage(int, int, int, int)}); changes to
+     * either show in the other, and <code>src</code> must not be flushed while
+     * the view is in use. The view also keeps the whole of <code>src</code>
+     * from being garbage collected. Use {@link #crop} for a crop that outlives
+     * the source.
+     *
+     * @param src
+     *            The image to crop.
+     * @param x
+     *            The x-coordinate of the top-left corner of the bounding box
+     *            used for cropping.
+     * @param y
+     *            The y-coordinate of the top-left corner of the bounding box
+     *            used for cropping.
+     * @param width
+     *            The width of the bounding cropping box.
+     * @param height
+     *            The height of the bounding cropping box.
+     *
+     * @return a {@link BufferedImage} of the same type as <code>src</code>
+     *         showing the cropped region of it.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>src</code> is <code>null</code>.
+     * @throws IllegalArgumentException
+     *             if any coordinates of the bounding crop box is invalid within
+     *             the bounds of the <code>src</code> image (e.g. negative or
+     *             too big), or the box is empty.
+     *
+     * @since 4.3
+     */
+    public static BufferedImage cropView(BufferedImage src, int x, int y,
+                                         int width, int height) throws IllegalArgumentException {
+        if (src == null)
+            throw new IllegalArgumentException("src cannot be null");
+        if (x < 0 || y < 0 || width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid crop bounds: x [" + x
+                    + "] and y [" + y + "] must be >= 0, width [" + width
+                    + "] and height [" + height + "] must be > 0");
+        if ((x + width) > src.getWidth())
+            throw new IllegalArgumentException(
+                    "Invalid crop bounds: x + width [" + (x + width)
+                            + "] must be <= src.getWidth() [" + src.getWidth()
+                            + "]");
+        if ((y + height) > src.getHeight())
+            throw new IllegalArgumentException(
+                    "Invalid crop bounds: y + height [" + (y + height)
+                            + "] must be <= src.getHeight() ["
+                            + src.getHeight() + "]");
+
+        if (DEBUG)
+            log(0, "Cropping Image view [x=%d, y=%d, width=%d, height=%d]", x,
+                    y, width, height);
+
+        return src.getSubimage(x, y, width, height);
+    }
+
+    /**
+     * @return <code>true</code> if <code>ops</code> holds at least one op that
+     *         is not <code>null</code>
+     *
+     * @since 4.3
+     */
+    private static boolean containsOp(BufferedImageOp... ops) {
+        if (ops != null) {
+            for (BufferedImageOp op : ops) {
+                if (op != null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Used to apply padding around the edges of an image using
      * {@link Color#BLACK} to fill the extra padded space and then return the
@@ -1691,13 +2000,27 @@ public class Scalr {
         if (DEBUG)
             log(1, "Using Scaling Method: %s", scalingMethod);
 
+        /*
+         * Point ops (see PointOps) the given ops start with are fused into the
+         * final scaling pass and applied to the result as it is drawn, instead
+         * of in extra passes over the whole image afterwards.
+         */
+        int fusedOps = (ops == null ? 0 : PointOps.runEnd(ops, 0));
+        PointOps fused = (fusedOps > 0 ? PointOps.fuse(ops, 0, fusedOps) : null);
+        if (fused != null && fused.size() == 0)
+            fused = null;
+
+        if (DEBUG && fused != null)
+            log(1, "Fusing %d point ops into the scaling pass", fused.size());
+
         // Now we scale the image
         if (scalingMethod == Scalr.Method.SPEED) {
             result = scaleImage(src, targetWidth, targetHeight,
-                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, null,
+                    fused);
         } else if (scalingMethod == Scalr.Method.BALANCED) {
             result = scaleImage(src, targetWidth, targetHeight,
-                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR, null, fused);
         } else if (scalingMethod == Scalr.Method.QUALITY
                 || scalingMethod == Scalr.Method.ULTRA_QUALITY) {
             /*
@@ -1724,7 +2047,7 @@ public class Scalr {
                  * wondering how they can speed their own calls up.
                  */
                 result = scaleImage(src, targetWidth, targetHeight,
-                        RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                        RenderingHints.VALUE_INTERPOLATION_BICUBIC, null, fused);
             } else {
                 if (DEBUG)
                     log(1,
@@ -1742,16 +2065,20 @@ public class Scalr {
                  */
                 result = scaleImageIncrementally(src, targetWidth,
                         targetHeight, scalingMethod,
-                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR, null, null,
+                        fused);
             }
+        } else if (scalingMethod == Scalr.Method.SEPARABLE) {
+            result = scaleImageSeparable(src, targetWidth, targetHeight,
+                    Filter.LANCZOS3, null, null, fused);
         }
 
         if (DEBUG)
             log(0, "Resized Image in %d ms", System.currentTimeMillis() - t);
 
-        // Apply any optional operations (if specified).
-        if (ops != null && ops.length > 0)
-            result = apply(result, ops);
+        // Apply any optional operations (if specified) not fused above.
+        if (ops != null && fusedOps < ops.length)
+            result = apply(result, Arrays.copyOfRange(ops, fusedOps, ops.length));
 
         return result;
     }
@@ -1895,16 +2222,22 @@ public class Scalr {
 
         // Create our target image we will render the rotated result to.
         BufferedImage result = createOptimalImage(src, newWidth, newHeight);
-        Graphics2D g2d = (Graphics2D) result.createGraphics();
 
-        /*
-         * Render the resultant image to our new rotatedImage buffer, applying
-         * the AffineTransform that we calculated above during rendering so the
-         * pixels from the old position are transposed to the new positions in
-         * the resulting image correctly.
-         */
-        g2d.drawImage(src, tx, null);
-        g2d.dispose();
+        if (rotateInBlocks(src, result, rotation)) {
+            if (DEBUG)
+                log(1, "Rotated in blocks of %d pixels", ROTATE_BLOCK_SIZE);
+        } else {
+            Graphics2D g2d = (Graphics2D) result.createGraphics();
+
+            /*
+             * Render the resultant image to our new rotatedImage buffer,
+             * applying the AffineTransform that we calculated above during
+             * rendering so the pixels from the old position are transposed to
+             * the new positions in the resulting image correctly.
+             */
+            g2d.drawImage(src, tx, null);
+            g2d.dispose();
+        }
 
         if (DEBUG)
             log(0, "Rotation Applied in %d ms, result [width=%d, height=%d]",
@@ -1918,6 +2251,102 @@ public class Scalr {
         return result;
     }
 
+    /**
+     * Used to move the pixels of <code>src</code> to their rotated (or flipped)
+     * positions in <code>dest</code> directly, without rendering.
+     * <p/>
+     * The image is processed in square blocks of {@link #ROTATE_BLOCK_SIZE}
+     * pixels: a block is copied out of the source raster, reordered in an
+     * <code>int[]</code> and copied into the target raster in one go. The
+     * blocks are small enough to stay in the cache, which a column-by-column
+     * transpose of a large image does not, and going through the rasters
+     * keeps both images managed by Java2D. The result is the same as drawing
+     * with the quadrant rotation (nearest neighbour, no interpolation).
+     *
+     * @return <code>true</code> if <code>dest</code> has been filled,
+     *         <code>false</code> if the type of <code>src</code> is not one of
+     *         {@link BufferedImage#TYPE_INT_RGB},
+     *         {@link BufferedImage#TYPE_INT_ARGB} or
+     *         {@link BufferedImage#TYPE_3BYTE_BGR} and it has to be drawn.
+     *
+     * @since 4.3
+     */
+    private static boolean rotateInBlocks(BufferedImage src,
+                                          BufferedImage dest, Rotation rotation) {
+        int type = src.getType();
+        if (type != BufferedImage.TYPE_INT_RGB
+                && type != BufferedImage.TYPE_INT_ARGB
+                && type != BufferedImage.TYPE_3BYTE_BGR)
+            return false;
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        WritableRaster in = src.getRaster();
+        WritableRaster out = dest.getRaster();
+        int[] block = new int[ROTATE_BLOCK_SIZE * ROTATE_BLOCK_SIZE];
+        int[] turned = new int[block.length];
+        byte[] bytes = (type == BufferedImage.TYPE_3BYTE_BGR ? new byte[3 * block.length]
+                : null);
+
+        for (int y0 = 0; y0 < height; y0 += ROTATE_BLOCK_SIZE) {
+            int bh = Math.min(ROTATE_BLOCK_SIZE, height - y0);
+            for (int x0 = 0; x0 < width; x0 += ROTATE_BLOCK_SIZE) {
+                int bw = Math.min(ROTATE_BLOCK_SIZE, width - x0);
+
+                if (bytes == null)
+                    in.getDataElements(x0, y0, bw, bh, block);
+                else {
+                    // The data elements come out in band order, R, G, B.
+                    in.getDataElements(x0, y0, bw, bh, bytes);
+                    for (int i = 0, b = 0; i < bw * bh; i++, b += 3)
+                        block[i] = 0xFF000000 | ((bytes[b] & 0xFF) << 16)
+                                | ((bytes[b + 1] & 0xFF) << 8)
+                                | (bytes[b + 2] & 0xFF);
+                }
+
+                switch (rotation) {
+                    case CW_90:
+                        for (int j = 0; j < bh; j++)
+                            for (int i = 0; i < bw; i++)
+                                turned[i * bh + (bh - 1 - j)] = block[j * bw + i];
+                        out.setDataElements(height - y0 - bh, x0, bh, bw, turned);
+                        break;
+
+                    case CW_270:
+                        for (int j = 0; j < bh; j++)
+                            for (int i = 0; i < bw; i++)
+                                turned[(bw - 1 - i) * bh + j] = block[j * bw + i];
+                        out.setDataElements(y0, width - x0 - bw, bh, bw, turned);
+                        break;
+
+                    case CW_180:
+                        for (int j = 0; j < bh; j++)
+                            for (int i = 0; i < bw; i++)
+                                turned[(bh - 1 - j) * bw + (bw - 1 - i)] = block[j
+                                        * bw + i];
+                        out.setDataElements(width - x0 - bw, height - y0 - bh, bw,
+                                bh, turned);
+                        break;
+
+                    case FLIP_HORZ:
+                        for (int j = 0; j < bh; j++)
+                            for (int i = 0; i < bw; i++)
+                                turned[j * bw + (bw - 1 - i)] = block[j * bw + i];
+                        out.setDataElements(width - x0 - bw, y0, bw, bh, turned);
+                        break;
+
+                    case FLIP_VERT:
+                        for (int j = 0; j < bh; j++)
+                            System.arraycopy(block, j * bw, turned, (bh - 1 - j)
+                                    * bw, bw);
+                        out.setDataElements(x0, height - y0 - bh, bw, bh, turned);
+                        break;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Used to write out a useful and well-formatted log message by any piece of
      * code inside of the imgscalr library.
@@ -2166,20 +2595,512 @@ public class Scalr {
         // Setup the rendering resources to match the source image's
         BufferedImage result = createOptimalImage(src, targetWidth,
                 targetHeight);
-        Graphics2D resultGraphics = result.createGraphics();
-
-        // Scale the image to the new buffer using the specified rendering hint.
-        resultGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                interpolationHintValue);
-        resultGraphics.drawImage(src, 0, 0, targetWidth, targetHeight, null);
 
-        // Just to be clean, explicitly dispose our temporary graphics object
-        resultGraphics.dispose();
+        drawScaled(src, false, result, false, interpolationHintValue, null,
+                null);
 
         // Return the scaled image to the caller.
         return result;
     }
 
+    /**
+     * Used to implement the same scaling operation as
+     * {@link #scaleImage(BufferedImage, int, int, Object)}, split into
+     * horizontal bands that are rendered in parallel on the given
+     * {@link ForkJoinPool}.
+     * <p/>
+     * Every band is a sub-image of the result sharing its raster, into which
+     * the whole scaled <code>src</code> is drawn shifted up by the top of the
+     * band; Java2D only computes the pixels inside the band and samples
+     * <code>src</code> across the band edges like the single draw would, so
+     * no overlap is needed and the result is identical.
+     *
+     * @param src
+     *            The image that will be scaled.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param interpolationHintValue
+     *            The {@link RenderingHints} interpolation value used to
+     *            indicate the method that {@link Graphics2D} should use when
+     *            scaling the image.
+     * @param pool
+     *            The pool the bands are rendered on. May be <code>null</code>
+     *            to render in the calling thread.
+     *
+     * @return the result of scaling the original <code>src</code> to the given
+     *         dimensions using the given interpolation method.
+     *
+     * @since 4.3
+     */
+    protected static BufferedImage scaleImage(BufferedImage src,
+                                              int targetWidth, int targetHeight, Object interpolationHintValue,
+                                              ForkJoinPool pool) {
+        return scaleImage(src, targetWidth, targetHeight,
+                interpolationHintValue, pool, null);
+    }
+
+    /**
+     * Used to implement {@link #scaleImage(BufferedImage, int, int, Object,
+     * ForkJoinPool)}, applying the <code>fused</code> point ops (if not
+     * <code>null</code>) to the result as it is drawn.
+     *
+     * @since 4.3
+     */
+    private static BufferedImage scaleImage(BufferedImage src,
+                                            int targetWidth, int targetHeight, Object interpolationHintValue,
+                                            ForkJoinPool pool, PointOps fused) {
+        BufferedImage result = createOptimalImage(src, targetWidth,
+                targetHeight);
+
+        drawScaled(src, false, result, false, interpolationHintValue, pool,
+                fused);
+
+        return result;
+    }
+
+    /**
+     * Used to draw <code>src</code> scaled to the size of <code>dest</code>,
+     * replacing all of its pixels, in bands on <code>pool</code> unless it is
+     * <code>null</code>.
+     * <p/>
+     * The pixels are written with {@link AlphaComposite#Src}, so a recycled
+     * (pooled) destination gives the same result as a new one; nothing of its
+     * previous content shows through translucent source pixels.
+     * <p/>
+     * If <code>fused</code> is not <code>null</code> its ops are applied to
+     * every band right after it has been drawn, while it is still in the
+     * cache.
+     * <p/>
+     * <code>srcIsScratch</code> and <code>destIsScratch</code> tell whether
+     * the images are pooled scratch images, whose pixel arrays the
+     * {@link #KERNELS} may use directly.
+     *
+     * @since 4.3
+     */
+    private static void drawScaled(BufferedImage src, boolean srcIsScratch,
+                                   BufferedImage dest, boolean destIsScratch,
+                                   Object interpolationHintValue, ForkJoinPool pool,
+                                   PointOps fused) {
+        int targetWidth = dest.getWidth();
+        int targetHeight = dest.getHeight();
+
+        if (scaleWithKernels(src, srcIsScratch, dest, destIsScratch,
+                interpolationHintValue, pool, fused))
+            return;
+
+        ParallelBands.run(pool, targetHeight, (from, to) -> {
+            BufferedImage band = (from == 0 && to == targetHeight) ? dest
+                    : dest.getSubimage(0, from, targetWidth, to - from);
+            Graphics2D bandGraphics = band.createGraphics();
+
+            // Scale the image to the new buffer using the specified rendering hint.
+            bandGraphics.setComposite(AlphaComposite.Src);
+            bandGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    interpolationHintValue);
+            bandGraphics.drawImage(src, 0, -from, targetWidth, targetHeight,
+                    null);
+
+            // Just to be clean, explicitly dispose our temporary graphics object
+            bandGraphics.dispose();
+
+            if (fused != null)
+                fused.filterRows(dest, dest, from, to);
+        });
+    }
+
+    /**
+     * Used to scale <code>src</code> into <code>dest</code> with the
+     * {@link #KERNELS} instead of Java2D, if they are available and the scale
+     * is one they cover: a bilinear downscale between two opaque images. An
+     * exact halving, the common step of
+     * {@link #scaleImageIncrementally}, is a plain 2x2 box average. The
+     * <code>fused</code> ops, if any, are applied to every band once drawn.
+     * <p/>
+     * The kernels work on the pixel arrays of scratch images directly; the
+     * pixels of a caller's source or a result image are copied through its
+     * raster instead (see {@link #readPixels} and {@link #writeRows}), taking
+     * its array would stop Java2D from managing it.
+     *
+     * @return <code>true</code> if <code>dest</code> has been filled,
+     *         <code>false</code> if the caller has to draw it.
+     *
+     * @since 4.3
+     */
+    private static boolean scaleWithKernels(BufferedImage src,
+                                            boolean srcIsScratch, BufferedImage dest, boolean destIsScratch,
+                                            Object interpolationHintValue, ForkJoinPool pool, PointOps fused) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int targetWidth = dest.getWidth();
+        int targetHeight = dest.getHeight();
+
+        if (KERNELS == null
+                || interpolationHintValue != RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                || src.getType() != BufferedImage.TYPE_INT_RGB
+                || dest.getType() != BufferedImage.TYPE_INT_RGB
+                || targetWidth > srcWidth || targetHeight > srcHeight)
+            return false;
+
+        int[] srcPixels = srcIsScratch ? PixelKernels.pixels(src) : null;
+        int[] destPixels = destIsScratch ? PixelKernels.pixels(dest) : null;
+        if ((srcIsScratch && srcPixels == null)
+                || (destIsScratch && destPixels == null))
+            return false;
+
+        int[] srcArray = srcIsScratch ? srcPixels : readPixels(src);
+        int[] destArray = destIsScratch ? destPixels : RasterPool
+                .borrow(targetWidth * targetHeight);
+        try {
+            boolean halving = srcWidth == 2 * targetWidth
+                    && srcHeight == 2 * targetHeight;
+            ParallelBands.run(pool, targetHeight, (from, to) -> {
+                if (halving)
+                    KERNELS.box2x(srcArray, srcWidth, destArray, targetWidth,
+                            from, to);
+                else
+                    KERNELS.bilinear(srcArray, srcWidth, srcHeight, destArray,
+                            targetWidth, targetHeight, from, to);
+                if (fused != null)
+                    fused.filter(destArray, from * targetWidth, (to - from)
+                            * targetWidth);
+                if (!destIsScratch)
+                    writeRows(destArray, dest, from, to);
+            });
+        } finally {
+            if (!srcIsScratch)
+                RasterPool.release(srcArray);
+            if (!destIsScratch)
+                RasterPool.release(destArray);
+        }
+        return true;
+    }
+
+    /**
+     * @return the pixels of the {@link BufferedImage#TYPE_INT_RGB} or
+     *         {@link BufferedImage#TYPE_INT_ARGB} image <code>img</code>,
+     *         copied through its raster into an array borrowed from the
+     *         {@link RasterPool}, which the caller has to release
+     *
+     * @since 4.3
+     */
+    private static int[] readPixels(BufferedImage img) {
+        int[] pixels = RasterPool.borrow(img.getWidth() * img.getHeight());
+        img.getRaster().getDataElements(0, 0, img.getWidth(), img.getHeight(),
+                pixels);
+        return pixels;
+    }
+
+    /**
+     * Copies the rows <code>[from, to)</code> of the whole-image
+     * <code>pixels</code> into <code>dest</code> through its raster, leaving
+     * it managed by Java2D.
+     *
+     * @since 4.3
+     */
+    private static void writeRows(int[] pixels, BufferedImage dest, int from,
+                                  int to) {
+        int width = dest.getWidth();
+        int[] row = new int[width];
+        WritableRaster raster = dest.getRaster();
+        for (int y = from; y < to; y++) {
+            System.arraycopy(pixels, y * width, row, 0, width);
+            raster.setDataElements(0, y, width, 1, row);
+        }
+    }
+
+    /**
+     * Used to apply <code>op</code> with the {@link #KERNELS} instead of
+     * Java2D, if they are available and cover the op: a {@link RescaleOp}
+     * leaving alpha alone (like {@link #OP_BRIGHTER} and {@link #OP_DARKER}),
+     * {@link #OP_GRAYSCALE}, or a 3x3 {@link ConvolveOp} with
+     * {@link ConvolveOp#EDGE_NO_OP} on an opaque image (like
+     * {@link #OP_ANTIALIAS}, see {@link #isKernelConvolution}).
+     * <p/>
+     * A convolution applies the <code>fused</code> point ops (if not
+     * <code>null</code>) to strips of {@link PointOps#STRIP_ROWS} rows right
+     * after computing them; other ops must be passed <code>null</code>.
+     * <p/>
+     * Like in {@link #scaleWithKernels}, only the pixel arrays of scratch
+     * images are used directly; the point ops go through the rasters row by
+     * row otherwise.
+     *
+     * @return <code>true</code> if <code>dest</code> has been filled,
+     *         <code>false</code> if the caller has to apply <code>op</code>
+     *         (and <code>fused</code>).
+     *
+     * @since 4.3
+     */
+    private static boolean applyWithKernels(BufferedImageOp op,
+                                            BufferedImage src, boolean srcIsScratch, BufferedImage dest,
+                                            boolean destIsScratch, PointOps fused) {
+        if (KERNELS == null || src.getType() != dest.getType()
+                || src.getWidth() != dest.getWidth()
+                || src.getHeight() != dest.getHeight())
+            return false;
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int length = width * height;
+        int[] srcPixels = srcIsScratch ? PixelKernels.pixels(src) : null;
+        int[] destPixels = destIsScratch ? PixelKernels.pixels(dest) : null;
+        if ((srcIsScratch && srcPixels == null)
+                || (destIsScratch && destPixels == null))
+            return false;
+        boolean direct = srcIsScratch && destIsScratch;
+
+        if (op instanceof RescaleOp) {
+            RescaleOp rescale = (RescaleOp) op;
+            int factors = rescale.getNumFactors();
+            if (factors != 1 && factors != 3)
+                return false;
+            float[] scales = rescale.getScaleFactors(null);
+            float[] offsets = rescale.getOffsets(null);
+            if (factors == 1) {
+                scales = new float[] { scales[0], scales[0], scales[0] };
+                offsets = new float[] { offsets[0], offsets[0], offsets[0] };
+            }
+
+            if (direct) {
+                KERNELS.rescale(srcPixels, destPixels, 0, length, scales,
+                        offsets);
+                return true;
+            }
+            int[] row = new int[width];
+            WritableRaster srcRaster = src.getRaster();
+            WritableRaster destRaster = dest.getRaster();
+            for (int y = 0; y < height; y++) {
+                srcRaster.getDataElements(0, y, width, 1, row);
+                KERNELS.rescale(row, row, 0, width, scales, offsets);
+                destRaster.setDataElements(0, y, width, 1, row);
+            }
+            return true;
+        }
+
+        if (op == OP_GRAYSCALE) {
+            if (direct) {
+                KERNELS.gray(srcPixels, destPixels, 0, length);
+                return true;
+            }
+            int[] row = new int[width];
+            WritableRaster srcRaster = src.getRaster();
+            WritableRaster destRaster = dest.getRaster();
+            for (int y = 0; y < height; y++) {
+                srcRaster.getDataElements(0, y, width, 1, row);
+                KERNELS.gray(row, row, 0, width);
+                destRaster.setDataElements(0, y, width, 1, row);
+            }
+            return true;
+        }
+
+        if (isKernelConvolution(op, src)) {
+            int[] srcArray = srcIsScratch ? srcPixels : readPixels(src);
+            int[] destArray = destIsScratch ? destPixels : RasterPool
+                    .borrow(length);
+            try {
+                float[] kernel = ((ConvolveOp) op).getKernel().getKernelData(
+                        null);
+                for (int from = 0; from < height; from += PointOps.STRIP_ROWS) {
+                    int to = Math.min(height, from + PointOps.STRIP_ROWS);
+                    KERNELS.convolve3x3(srcArray, destArray, width, height,
+                            kernel, from, to);
+                    if (fused != null)
+                        fused.filter(destArray, from * width, (to - from)
+                                * width);
+                    if (!destIsScratch)
+                        writeRows(destArray, dest, from, to);
+                }
+            } finally {
+                if (!srcIsScratch)
+                    RasterPool.release(srcArray);
+                if (!destIsScratch)
+                    RasterPool.release(destArray);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if <code>op</code> is a 3x3
+     *         {@link ConvolveOp} with {@link ConvolveOp#EDGE_NO_OP} the
+     *         {@link #KERNELS} can apply to the opaque <code>src</code>
+     *
+     * @since 4.3
+     */
+    private static boolean isKernelConvolution(BufferedImageOp op,
+                                               BufferedImage src) {
+        if (KERNELS == null || !(op instanceof ConvolveOp)
+                || src.getType() != BufferedImage.TYPE_INT_RGB)
+            return false;
+        ConvolveOp convolve = (ConvolveOp) op;
+        Kernel kernel = convolve.getKernel();
+        return convolve.getEdgeCondition() == ConvolveOp.EDGE_NO_OP
+                && kernel.getWidth() == 3 && kernel.getHeight() == 3
+                && kernel.getXOrigin() == 1 && kernel.getYOrigin() == 1;
+    }
+
+    /**
+     * Used to scale an image in a single pass of a separable convolution with
+     * the given {@link Filter}, see {@link Method#SEPARABLE}.
+     * <p/>
+     * The result is always of type {@link BufferedImage#TYPE_INT_RGB} or
+     * {@link BufferedImage#TYPE_INT_ARGB}, depending on the transparency of
+     * <code>src</code>. Sources of these two types and
+     * {@link BufferedImage#TYPE_3BYTE_BGR} are read directly from their raster;
+     * any other type is converted row by row, which works but is noticeably
+     * slower.
+     *
+     * @param src
+     *            The image that will be scaled.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param filter
+     *            The filter used to weight the source pixels.
+     *
+     * @return the result of scaling the original <code>src</code> to the given
+     *         dimensions using the given filter.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>src</code> or <code>filter</code> is
+     *             <code>null</code>.
+     * @throws IllegalArgumentException
+     *             if <code>targetWidth</code> or <code>targetHeight</code> are
+     *             &lt;= 0.
+     *
+     * @since 4.3
+     */
+    public static BufferedImage scaleImageSeparable(BufferedImage src,
+                                                    int targetWidth, int targetHeight, Filter filter)
+            throws IllegalArgumentException {
+        return scaleImageSeparable(src, targetWidth, targetHeight, filter, null);
+    }
+
+    /**
+     * Used to scale an image in a single pass of a separable convolution (see
+     * {@link #scaleImageSeparable(BufferedImage, int, int, Filter)}) with
+     * support for cooperative cancellation.
+     * <p/>
+     * <code>cancelled</code> is checked every few rows of each pass.
+     *
+     * @param src
+     *            The image that will be scaled.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param filter
+     *            The filter used to weight the source pixels.
+     * @param cancelled
+     *            Polled while scaling, the operation is abandoned once it
+     *            returns <code>true</code>. May be <code>null</code>.
+     *
+     * @return the result of scaling the original <code>src</code> to the given
+     *         dimensions using the given filter.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>src</code> or <code>filter</code> is
+     *             <code>null</code>.
+     * @throws IllegalArgumentException
+     *             if <code>targetWidth</code> or <code>targetHeight</code> are
+     *             &lt;= 0.
+     * @throws CancellationException
+     *             if <code>cancelled</code> returned <code>true</code>.
+     *
+     * @since 4.3
+     */
+    public static BufferedImage scaleImageSeparable(BufferedImage src,
+                                                    int targetWidth, int targetHeight, Filter filter,
+                                                    BooleanSupplier cancelled) throws IllegalArgumentException,
+            CancellationException {
+        return scaleImageSeparable(src, targetWidth, targetHeight, filter,
+                cancelled, null);
+    }
+
+    /**
+     * Used to scale an image in a single pass of a separable convolution (see
+     * {@link #scaleImageSeparable(BufferedImage, int, int, Filter)}), split
+     * into horizontal bands that are scaled in parallel on the given
+     * {@link ForkJoinPool}.
+     * <p/>
+     * Every band runs the horizontal pass only over the source rows its filter
+     * reaches, so neighbouring bands repeat the few rows of filter support
+     * they overlap by; the result is identical to the one of the single
+     * threaded operation. The calling thread blocks until all bands are done.
+     *
+     * @param src
+     *            The image that will be scaled.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param filter
+     *            The filter used to weight the source pixels.
+     * @param cancelled
+     *            Polled while scaling, the operation is abandoned once it
+     *            returns <code>true</code>. May be <code>null</code>.
+     * @param pool
+     *            The pool the bands are scaled on. May be <code>null</code> to
+     *            scale in the calling thread.
+     *
+     * @return the result of scaling the original <code>src</code> to the given
+     *         dimensions using the given filter.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>src</code> or <code>filter</code> is
+     *             <code>null</code>.
+     * @throws IllegalArgumentException
+     *             if <code>targetWidth</code> or <code>targetHeight</code> are
+     *             &lt;= 0.
+     * @throws CancellationException
+     *             if <code>cancelled</code> returned <code>true</code>.
+     *
+     * @since 4.3
+     */
+    public static BufferedImage scaleImageSeparable(BufferedImage src,
+                                                    int targetWidth, int targetHeight, Filter filter,
+                                                    BooleanSupplier cancelled, ForkJoinPool pool)
+            throws IllegalArgumentException, CancellationException {
+        return scaleImageSeparable(src, targetWidth, targetHeight, filter,
+                cancelled, pool, null);
+    }
+
+    /**
+     * Used to implement {@link #scaleImageSeparable(BufferedImage, int, int,
+     * Filter, BooleanSupplier, ForkJoinPool)}, applying the <code>fused</code>
+     * point ops (if not <code>null</code>) to every row of the result as it is
+     * computed.
+     *
+     * @since 4.3
+     */
+    private static BufferedImage scaleImageSeparable(BufferedImage src,
+                                                     int targetWidth, int targetHeight, Filter filter,
+                                                     BooleanSupplier cancelled, ForkJoinPool pool, PointOps fused)
+            throws IllegalArgumentException, CancellationException {
+        long t = -1;
+        if (DEBUG)
+            t = System.currentTimeMillis();
+
+        if (src == null)
+            throw new IllegalArgumentException("src cannot be null");
+        if (filter == null)
+            throw new IllegalArgumentException("filter cannot be null");
+
+        BufferedImage result = Resampler.resample(src, targetWidth,
+                targetHeight, filter, cancelled, pool, fused);
+
+        if (DEBUG)
+            log(2, "Separable %s scale from [%d x %d] to [%d x %d] in %d ms",
+                    filter, src.getWidth(), src.getHeight(), targetWidth,
+                    targetHeight, System.currentTimeMillis() - t);
+
+        return result;
+    }
+
     /**
      * Used to implement Chris Campbell's incremental-scaling algorithm: <a
      * href="http://today.java.net/pub/a/today/2007/04/03/perils
@@ -2212,7 +3133,115 @@ public class Scalr {
     public static BufferedImage scaleImageIncrementally(BufferedImage src,
                                                            int targetWidth, int targetHeight, Method scalingMethod,
                                                            Object interpolationHintValue) {
+        return scaleImageIncrementally(src, targetWidth, targetHeight,
+                scalingMethod, interpolationHintValue, null);
+    }
+
+    /**
+     * Used to implement Chris Campbell's incremental-scaling algorithm (see
+     * {@link #scaleImageIncrementally(BufferedImage, int, int, Method, Object)}
+     * ) with support for cooperative cancellation.
+     * <p/>
+     * <code>cancelled</code> is checked before every incremental step; once it
+     * returns <code>true</code> the interim images are flushed and the
+     * operation is abandoned, so a caller that lost interest in the result
+     * does not have to wait for the remaining steps.
+     *
+     * @param src
+     *            The image that will be scaled.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param scalingMethod
+     *            The scaling method specified by the user (or calculated by
+     *            imgscalr) to use for this incremental scaling operation.
+     * @param interpolationHintValue
+     *            The {@link RenderingHints} interpolation value used to
+     *            indicate the method that {@link Graphics2D} should use when
+     *            scaling the image.
+     * @param cancelled
+     *            Polled between the incremental steps, the operation is
+     *            abandoned once it returns <code>true</code>. May be
+     *            <code>null</code>.
+     *
+     * @return an image scaled to the given dimensions using the given rendering
+     *         hint.
+     *
+     * @throws CancellationException
+     *             if <code>cancelled</code> returned <code>true</code>.
+     *
+     * @since 4.3
+     */
+    public static BufferedImage scaleImageIncrementally(BufferedImage src,
+                                                           int targetWidth, int targetHeight, Method scalingMethod,
+                                                           Object interpolationHintValue, BooleanSupplier cancelled)
+            throws CancellationException {
+        return scaleImageIncrementally(src, targetWidth, targetHeight,
+                scalingMethod, interpolationHintValue, cancelled, null);
+    }
+
+    /**
+     * Used to implement Chris Campbell's incremental-scaling algorithm (see
+     * {@link #scaleImageIncrementally(BufferedImage, int, int, Method, Object)}
+     * ) with support for cooperative cancellation, rendering every step in
+     * horizontal bands in parallel on the given {@link ForkJoinPool} (see
+     * {@link #scaleImage(BufferedImage, int, int, Object, ForkJoinPool)}).
+     * <p/>
+     * The steps themselves still run one after the other, each one needs the
+     * complete result of the previous one.
+     *
+     * @param src
+     *            The image that will be scaled.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param scalingMethod
+     *            The scaling method specified by the user (or calculated by
+     *            imgscalr) to use for this incremental scaling operation.
+     * @param interpolationHintValue
+     *            The {@link RenderingHints} interpolation value used to
+     *            indicate the method that {@link Graphics2D} should use when
+     *            scaling the image.
+     * @param cancelled
+     *            Polled between the incremental steps, the operation is
+     *            abandoned once it returns <code>true</code>. May be
+     *            <code>null</code>.
+     * @param pool
+     *            The pool the bands of every step are rendered on. May be
+     *            <code>null</code> to render in the calling thread.
+     *
+     * @return an image scaled to the given dimensions using the given rendering
+     *         hint.
+     *
+     * @throws CancellationException
+     *             if <code>cancelled</code> returned <code>true</code>.
+     *
+     * @since 4.3
+     */
+    public static BufferedImage scaleImageIncrementally(BufferedImage src,
+                                                           int targetWidth, int targetHeight, Method scalingMethod,
+                                                           Object interpolationHintValue, BooleanSupplier cancelled,
+                                                           ForkJoinPool pool) throws CancellationException {
+        return scaleImageIncrementally(src, targetWidth, targetHeight,
+                scalingMethod, interpolationHintValue, cancelled, pool, null);
+    }
+
+    /**
+     * Used to implement {@link #scaleImageIncrementally(BufferedImage, int,
+     * int, Method, Object, BooleanSupplier, ForkJoinPool)}, applying the
+     * <code>fused</code> point ops (if not <code>null</code>) to the result of
+     * the last step as it is drawn.
+     *
+     * @since 4.3
+     */
+    private static BufferedImage scaleImageIncrementally(BufferedImage src,
+                                                         int targetWidth, int targetHeight, Method scalingMethod,
+                                                         Object interpolationHintValue, BooleanSupplier cancelled,
+                                                         ForkJoinPool pool, PointOps fused) throws CancellationException {
         boolean hasReassignedSrc = false;
+        boolean srcIsScratch = false;
         int incrementCount = 0;
         int currentWidth = src.getWidth();
         int currentHeight = src.getHeight();
@@ -2249,96 +3278,158 @@ public class Scalr {
          */
         int fraction = (scalingMethod == Method.ULTRA_QUALITY ? 7 : 2);
 
-        do {
-            int prevCurrentWidth = currentWidth;
-            int prevCurrentHeight = currentHeight;
+        /*
+         * Interim images are drawn into two pooled scratch buffers in turns, so
+         * a long chain of steps allocates no pixel memory; every step reads
+         * from one buffer and writes into the other. Only the image of the
+         * last step, which is handed to the caller, is newly allocated.
+         */
+        RasterPool.Scratch[] scratch = { new RasterPool.Scratch(),
+                new RasterPool.Scratch() };
+        int nextScratch = 0;
+        boolean alpha = src.getTransparency() != Transparency.OPAQUE;
+
+        try {
+            do {
+                int prevCurrentWidth = currentWidth;
+                int prevCurrentHeight = currentHeight;
 
-            /*
-             * If the current width is bigger than our target, cut it in half
-             * and sample again.
-             */
-            if (currentWidth > targetWidth) {
-                currentWidth -= (currentWidth / fraction);
+                /*
+                 * If the current width is bigger than our target, cut it in half
+                 * and sample again.
+                 */
+                if (currentWidth > targetWidth) {
+                    currentWidth -= (currentWidth / fraction);
+
+                    /*
+                     * If we cut the width too far it means we are on our last
+                     * iteration. Just set it to the target width and finish up.
+                     */
+                    if (currentWidth < targetWidth)
+                        currentWidth = targetWidth;
+                }
 
                 /*
-                 * If we cut the width too far it means we are on our last
-                 * iteration. Just set it to the target width and finish up.
+                 * If the current height is bigger than our target, cut it in half
+                 * and sample again.
                  */
-                if (currentWidth < targetWidth)
-                    currentWidth = targetWidth;
-            }
 
-            /*
-             * If the current height is bigger than our target, cut it in half
-             * and sample again.
-             */
+                if (currentHeight > targetHeight) {
+                    currentHeight -= (currentHeight / fraction);
+
+                    /*
+                     * If we cut the height too far it means we are on our last
+                     * iteration. Just set it to the target height and finish up.
+                     */
 
-            if (currentHeight > targetHeight) {
-                currentHeight -= (currentHeight / fraction);
+                    if (currentHeight < targetHeight)
+                        currentHeight = targetHeight;
+                }
 
                 /*
-                 * If we cut the height too far it means we are on our last
-                 * iteration. Just set it to the target height and finish up.
+                 * Stop when we cannot incrementally step down anymore.
+                 *
+                 * This used to use a || condition, but that would cause problems
+                 * when using FIT_EXACT such that sometimes the width OR height
+                 * would not change between iterations, but the other dimension
+                 * would (e.g. resizing 500x500 to 500x250).
+                 *
+                 * Now changing this to an && condition requires that both
+                 * dimensions do not change between a resize iteration before we
+                 * consider ourselves done.
                  */
+                if (prevCurrentWidth == currentWidth
+                        && prevCurrentHeight == currentHeight)
+                    break;
 
-                if (currentHeight < targetHeight)
-                    currentHeight = targetHeight;
-            }
+                /*
+                 * Give up before the next step if the caller is no longer
+                 * interested in the result, flushing our own interim image (never
+                 * the caller-supplied one).
+                 */
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    if (hasReassignedSrc && !srcIsScratch)
+                        src.flush();
 
-            /*
-             * Stop when we cannot incrementally step down anymore.
-             *
-             * This used to use a || condition, but that would cause problems
-             * when using FIT_EXACT such that sometimes the width OR height
-             * would not change between iterations, but the other dimension
-             * would (e.g. resizing 500x500 to 500x250).
-             *
-             * Now changing this to an && condition requires that both
-             * dimensions do not change between a resize iteration before we
-             * consider ourselves done.
-             */
-            if (prevCurrentWidth == currentWidth
-                    && prevCurrentHeight == currentHeight)
-                break;
+                    if (DEBUG)
+                        log(2, "Incremental scaling cancelled after %d steps.",
+                                incrementCount);
 
-            if (DEBUG)
-                log(2, "Scaling from [%d x %d] to [%d x %d]", prevCurrentWidth,
-                        prevCurrentHeight, currentWidth, currentHeight);
+                    throw new CancellationException(
+                            "incremental scaling cancelled after " + incrementCount
+                                    + " steps");
+                }
 
-            // Render the incremental scaled image.
-            BufferedImage incrementalImage = scaleImage(src, currentWidth,
-                    currentHeight, interpolationHintValue);
+                if (DEBUG)
+                    log(2, "Scaling from [%d x %d] to [%d x %d]", prevCurrentWidth,
+                            prevCurrentHeight, currentWidth, currentHeight);
 
-            /*
-             * Before re-assigning our interim (partially scaled)
-             * incrementalImage to be the new src image before we iterate around
-             * again to process it down further, we want to flush() the previous
-             * src image IF (and only IF) it was one of our own temporary
-             * BufferedImages created during this incremental down-sampling
-             * cycle. If it wasn't one of ours, then it was the original
-             * caller-supplied BufferedImage in which case we don't want to
-             * flush() it and just leave it alone.
-             */
-            if (hasReassignedSrc)
-                src.flush();
+                /*
+                 * Once neither dimension is above its target, the next cycle would
+                 * not change anything; this is the last step and its image is the
+                 * result.
+                 */
+                boolean lastStep = currentWidth <= targetWidth
+                        && currentHeight <= targetHeight;
 
-            /*
-             * Now treat our incremental partially scaled image as the src image
-             * and cycle through our loop again to do another incremental
-             * scaling of it (if necessary).
-             */
-            src = incrementalImage;
+                // Render the incremental scaled image.
+                BufferedImage incrementalImage = lastStep ? createOptimalImage(
+                        src, currentWidth, currentHeight) : scratch[nextScratch]
+                        .image(currentWidth, currentHeight, alpha);
+                drawScaled(src, srcIsScratch, incrementalImage, !lastStep,
+                        interpolationHintValue, pool, lastStep ? fused : null);
+
+                /*
+                 * Before re-assigning our interim (partially scaled)
+                 * incrementalImage to be the new src image before we iterate around
+                 * again to process it down further, we want to flush() the previous
+                 * src image IF (and only IF) it was one of our own temporary
+                 * BufferedImages created during this incremental down-sampling
+                 * cycle. If it wasn't one of ours, then it was the original
+                 * caller-supplied BufferedImage in which case we don't want to
+                 * flush() it and just leave it alone. Scratch images are not
+                 * flushed, their buffers are reused.
+                 */
+                if (hasReassignedSrc && !srcIsScratch)
+                    src.flush();
+
+                /*
+                 * Now treat our incremental partially scaled image as the src image
+                 * and cycle through our loop again to do another incremental
+                 * scaling of it (if necessary).
+                 */
+                src = incrementalImage;
+                srcIsScratch = !lastStep;
+                if (!lastStep)
+                    nextScratch ^= 1;
+
+                /*
+                 * Keep track of us re-assigning the original caller-supplied source
+                 * image with one of our interim BufferedImages so we know when to
+                 * explicitly flush the interim "src" on the next cycle through.
+                 */
+                hasReassignedSrc = true;
+
+                // Track how many times we go through this cycle to scale the image.
+                incrementCount++;
+            } while (currentWidth != targetWidth || currentHeight != targetHeight);
 
             /*
-             * Keep track of us re-assigning the original caller-supplied source
-             * image with one of our interim BufferedImages so we know when to
-             * explicitly flush the interim "src" on the next cycle through.
+             * A step that cannot make progress any more (e.g. a dimension too small
+             * to be cut by the fraction) can end the loop on a scratch image, copy
+             * it out before its buffer goes back to the pool.
              */
-            hasReassignedSrc = true;
-
-            // Track how many times we go through this cycle to scale the image.
-            incrementCount++;
-        } while (currentWidth != targetWidth || currentHeight != targetHeight);
+            if (srcIsScratch || (fused != null && !hasReassignedSrc)) {
+                BufferedImage result = createOptimalImage(src);
+                drawScaled(src, srcIsScratch, result, false,
+                        RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, null,
+                        fused);
+                src = result;
+            }
+        } finally {
+            scratch[0].release();
+            scratch[1].release();
+        }
 
         if (DEBUG)
             log(2, "Incrementally Scaled Image in %d steps.", incrementCount);
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * Scales an image that is handed over in horizontal strips, top to bottom,
+ * without ever holding more of the source than the strip being written. Meant
+ * for images too large to be decoded whole, e.g. read in strips with
+ * {@link javax.imageio.ImageReadParam#setSourceRegion}.
+ * <p/>
+ * The scaling is the separable convolution of {@link Scalr.Method#SEPARABLE}
+ * (see {@link Scalr#scaleImageSeparable}), run row by row: every source row
+ * is filtered horizontally to the target width as soon as it arrives and kept
+ * in a ring buffer holding as many rows as the vertical filter spans; every
+ * target row is computed once its last source row has arrived. Besides the
+ * result the scaler only holds that ring buffer, a few target rows in size
+ * when scaling down.
+ * <p/>
+ * The result is the same as the one of
+ * {@link Scalr#scaleImageSeparable(BufferedImage, int, int, Scalr.Filter)}
+ * applied to the whole image, however the image is split into strips. It is of
+ * type {@link BufferedImage#TYPE_INT_RGB} or
+ * {@link BufferedImage#TYPE_INT_ARGB}, depending on the transparency of the
+ * first strip.
+ * <p/>
+ * Instances are not thread-safe.
+ *
+ * @since 4.3
+ */
+public final class StripScaler {
+    private final int srcWidth;
+    private final int srcHeight;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final Resampler.Weights horizontal;
+    private final Resampler.Weights vertical;
+    private final Resampler.VerticalPass pass;
+    private final int ringRows;
+    private final int[] ring;
+    private final int[] row;
+    private byte[] bytes;
+
+    private BufferedImage result;
+    private boolean alpha;
+    private int rowsWritten = 0;
+    private int rowsScaled = 0;
+
+    /**
+     * @param srcWidth
+     *            The width of the source image, and of every strip.
+     * @param srcHeight
+     *            The height of the source image, the sum of the heights of
+     *            all strips.
+     * @param targetWidth
+     *            The target width for the scaled image.
+     * @param targetHeight
+     *            The target height for the scaled image.
+     * @param filter
+     *            The filter used to weight the source pixels.
+     *
+     * @throws IllegalArgumentException
+     *             if any dimension is &lt;= 0 or <code>filter</code> is
+     *             <code>null</code>.
+     */
+    public StripScaler(int srcWidth, int srcHeight, int targetWidth,
+                       int targetHeight, Scalr.Filter filter) throws IllegalArgumentException {
+        if (srcWidth <= 0 || srcHeight <= 0)
+            throw new IllegalArgumentException("srcWidth [" + srcWidth
+                    + "] and srcHeight [" + srcHeight + "] must be > 0");
+        if (targetWidth <= 0 || targetHeight <= 0)
+            throw new IllegalArgumentException("targetWidth [" + targetWidth
+                    + "] and targetHeight [" + targetHeight + "] must be > 0");
+        if (filter == null)
+            throw new IllegalArgumentException("filter cannot be null");
+
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.horizontal = new Resampler.Weights(srcWidth, targetWidth, filter);
+        this.vertical = new Resampler.Weights(srcHeight, targetHeight, filter);
+        this.pass = new Resampler.VerticalPass(targetWidth);
+
+        /*
+         * The first source row of the target rows never decreases, so a target
+         * row is computed at the latest when its last source row arrives and
+         * all the rows it needs are among the last 'count' ones.
+         */
+        int rows = 1;
+        for (int count : vertical.count)
+            rows = Math.max(rows, count);
+        this.ringRows = rows;
+        this.ring = new int[ringRows * targetWidth];
+        this.row = new int[srcWidth];
+
+        if (Scalr.DEBUG)
+            Scalr.log(1,
+                    "Strip scaling [%d x %d] to [%d x %d] with %s, keeping %d filtered rows",
+                    srcWidth, srcHeight, targetWidth, targetHeight, filter,
+                    ringRows);
+    }
+
+    /**
+     * Scales the next strip of the source, the rows following the ones
+     * written before. Strips may have any height and type.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>strip</code> is <code>null</code>, not as wide as
+     *             the source or reaches below its bottom.
+     */
+    public void write(BufferedImage strip) throws IllegalArgumentException {
+        if (strip == null)
+            throw new IllegalArgumentException("strip cannot be null");
+        if (strip.getWidth() != srcWidth)
+            throw new IllegalArgumentException("strip width ["
+                    + strip.getWidth() + "] must be the source width ["
+                    + srcWidth + "]");
+        if (rowsWritten + strip.getHeight() > srcHeight)
+            throw new IllegalArgumentException("strip of " + strip.getHeight()
+                    + " rows after " + rowsWritten
+                    + " reaches below the source height [" + srcHeight + "]");
+
+        if (result == null) {
+            result = Scalr.createOptimalImage(strip, targetWidth, targetHeight);
+            alpha = strip.getTransparency() != Transparency.OPAQUE;
+        }
+
+        WritableRaster raster = result.getRaster();
+        for (int y = 0; y < strip.getHeight(); y++) {
+            bytes = Resampler.readRow(strip, y, row, bytes);
+            Resampler.convolve(row, horizontal, ring, (rowsWritten % ringRows)
+                    * targetWidth, alpha);
+            rowsWritten++;
+
+            while (rowsScaled < targetHeight
+                    && vertical.endSource(rowsScaled, rowsScaled + 1) <= rowsWritten) {
+                int[] out = pass.row(vertical, rowsScaled, ring, 0, ringRows,
+                        alpha);
+                raster.setDataElements(0, rowsScaled, targetWidth, 1, out);
+                rowsScaled++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of source rows written so far
+     */
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * @return <code>true</code> once all rows of the source have been written
+     */
+    public boolean isComplete() {
+        return rowsWritten == srcHeight;
+    }
+
+    /**
+     * @return the scaled image
+     *
+     * @throws IllegalStateException
+     *             if not all rows of the source have been written yet.
+     */
+    public BufferedImage getResult() throws IllegalStateException {
+        if (!isComplete())
+            throw new IllegalStateException("only " + rowsWritten + " of "
+                    + srcHeight + " source rows written");
+        return result;
+    }
+}
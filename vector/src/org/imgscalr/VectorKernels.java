@@ -0,0 +1,331 @@
+/**
+ * Copyright 2011 Riyad Kalla
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.imgscalr;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PixelKernels} on the <code>jdk.incubator.vector</code> API, using the
+ * widest vector shape the CPU supports ({@link IntVector#SPECIES_PREFERRED}).
+ * <p/>
+ * Pixels are unpacked into one vector per channel with shifts and masks,
+ * computed on in <code>float</code> lanes of the same shape and packed again;
+ * whatever does not fill a whole vector at the end of a row is computed by the
+ * same formulas in scalar code.
+ * <p/>
+ * Pixels the kernels need at irregular positions (every other pixel when
+ * halving, the neighbours of a bilinear sample, table lookups) are first copied
+ * into contiguous arrays by plain scalar loads instead of being gathered with
+ * index maps: C2 on JDK 17 miscompiles some gathers on AVX-512 and crashes the
+ * JVM, and the arithmetic after the loads is where the time goes anyway.
+ * <p/>
+ * Needs <code>--add-modules jdk.incubator.vector</code> to compile and run,
+ * see the README.
+ *
+ * @since 4.3
+ */
+final class VectorKernels implements PixelKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = INTS.length();
+
+    /**
+     * sRGB decoding of every channel value, and the encoding of linear values
+     * in steps of <code>1 / ENCODE_STEPS</code>, for {@link #gray}.
+     */
+    private static final float[] LINEAR = new float[256];
+    private static final int ENCODE_STEPS = 4095;
+    private static final int[] ENCODE = new int[ENCODE_STEPS + 1];
+
+    static {
+        if (FLOATS.length() != LANES)
+            throw new IllegalStateException("int and float species differ in length");
+        for (int i = 0; i < LINEAR.length; i++) {
+            double c = i / 255.0;
+            LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow(
+                    (c + 0.055) / 1.055, 2.4));
+        }
+        for (int i = 0; i < ENCODE.length; i++) {
+            double l = (double) i / ENCODE_STEPS;
+            double c = l <= 0.0031308 ? 12.92 * l : 1.055 * Math.pow(l,
+                    1 / 2.4) - 0.055;
+            ENCODE[i] = (int) Math.round(255 * c);
+        }
+    }
+
+    VectorKernels() {
+    }
+
+    @Override
+    public String describe() {
+        return "Vector API, " + INTS.vectorBitSize() + " bit (" + LANES
+                + " pixels per vector)";
+    }
+
+    @Override
+    public void box2x(int[] src, int srcWidth, int[] dst, int dstWidth,
+                      int from, int to) {
+        int[] a = new int[dstWidth];
+        int[] b = new int[dstWidth];
+        int[] c = new int[dstWidth];
+        int[] d = new int[dstWidth];
+        int bound = INTS.loopBound(dstWidth);
+        for (int y = from; y < to; y++) {
+            int row0 = 2 * y * srcWidth;
+            int row1 = row0 + srcWidth;
+            int out = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                a[x] = src[row0 + 2 * x];
+                b[x] = src[row0 + 2 * x + 1];
+                c[x] = src[row1 + 2 * x];
+                d[x] = src[row1 + 2 * x + 1];
+            }
+            int x = 0;
+            for (; x < bound; x += LANES) {
+                IntVector pa = IntVector.fromArray(INTS, a, x);
+                IntVector pb = IntVector.fromArray(INTS, b, x);
+                IntVector pc = IntVector.fromArray(INTS, c, x);
+                IntVector pd = IntVector.fromArray(INTS, d, x);
+                pack(IntVector.broadcast(INTS, 0xFF000000),
+                        average(pa, pb, pc, pd, 16), average(pa, pb, pc, pd, 8),
+                        average(pa, pb, pc, pd, 0)).intoArray(dst, out + x);
+            }
+            for (; x < dstWidth; x++)
+                dst[out + x] = 0xFF000000
+                        | (average(a[x], b[x], c[x], d[x], 16) << 16)
+                        | (average(a[x], b[x], c[x], d[x], 8) << 8)
+                        | average(a[x], b[x], c[x], d[x], 0);
+        }
+    }
+
+    @Override
+    public void bilinear(int[] src, int srcWidth, int srcHeight, int[] dst,
+                         int dstWidth, int dstHeight, int from, int to) {
+        int[] x0 = new int[dstWidth];
+        int[] x1 = new int[dstWidth];
+        float[] fx = new float[dstWidth];
+        for (int x = 0; x < dstWidth; x++) {
+            float sx = clamp((x + 0.5f) * srcWidth / dstWidth - 0.5f, 0, srcWidth - 1);
+            x0[x] = (int) sx;
+            x1[x] = Math.min(x0[x] + 1, srcWidth - 1);
+            fx[x] = sx - x0[x];
+        }
+
+        int[] p00 = new int[dstWidth];
+        int[] p01 = new int[dstWidth];
+        int[] p10 = new int[dstWidth];
+        int[] p11 = new int[dstWidth];
+        int bound = INTS.loopBound(dstWidth);
+        for (int y = from; y < to; y++) {
+            float sy = clamp((y + 0.5f) * srcHeight / dstHeight - 0.5f, 0, srcHeight - 1);
+            int y0 = (int) sy;
+            int row0 = y0 * srcWidth;
+            int row1 = Math.min(y0 + 1, srcHeight - 1) * srcWidth;
+            float fy = sy - y0;
+            int out = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                p00[x] = src[row0 + x0[x]];
+                p01[x] = src[row0 + x1[x]];
+                p10[x] = src[row1 + x0[x]];
+                p11[x] = src[row1 + x1[x]];
+            }
+            int x = 0;
+            for (; x < bound; x += LANES) {
+                IntVector q00 = IntVector.fromArray(INTS, p00, x);
+                IntVector q01 = IntVector.fromArray(INTS, p01, x);
+                IntVector q10 = IntVector.fromArray(INTS, p10, x);
+                IntVector q11 = IntVector.fromArray(INTS, p11, x);
+                FloatVector wx = FloatVector.fromArray(FLOATS, fx, x);
+                pack(IntVector.broadcast(INTS, 0xFF000000),
+                        lerp(q00, q01, q10, q11, wx, fy, 16),
+                        lerp(q00, q01, q10, q11, wx, fy, 8),
+                        lerp(q00, q01, q10, q11, wx, fy, 0)).intoArray(dst, out + x);
+            }
+            for (; x < dstWidth; x++)
+                dst[out + x] = 0xFF000000
+                        | (lerp(p00[x], p01[x], p10[x], p11[x], fx[x], fy, 16) << 16)
+                        | (lerp(p00[x], p01[x], p10[x], p11[x], fx[x], fy, 8) << 8)
+                        | lerp(p00[x], p01[x], p10[x], p11[x], fx[x], fy, 0);
+        }
+    }
+
+    @Override
+    public void rescale(int[] src, int[] dst, int offset, int length,
+                        float[] scales, float[] offsets) {
+        int end = offset + length;
+        int bound = offset + INTS.loopBound(length);
+        int i = offset;
+        for (; i < bound; i += LANES) {
+            IntVector p = IntVector.fromArray(INTS, src, i);
+            IntVector r = toChannel(channel(p, 16).fma(scales[0], offsets[0]));
+            IntVector g = toChannel(channel(p, 8).fma(scales[1], offsets[1]));
+            IntVector b = toChannel(channel(p, 0).fma(scales[2], offsets[2]));
+            pack(p.and(0xFF000000), r, g, b).intoArray(dst, i);
+        }
+        for (; i < end; i++) {
+            int p = src[i];
+            dst[i] = (p & 0xFF000000)
+                    | (toChannel(((p >> 16) & 0xFF) * scales[0] + offsets[0]) << 16)
+                    | (toChannel(((p >> 8) & 0xFF) * scales[1] + offsets[1]) << 8)
+                    | toChannel((p & 0xFF) * scales[2] + offsets[2]);
+        }
+    }
+
+    @Override
+    public void gray(int[] src, int[] dst, int offset, int length) {
+        float[] r = new float[LANES];
+        float[] g = new float[LANES];
+        float[] b = new float[LANES];
+        int[] encoded = new int[LANES];
+        int end = offset + length;
+        int bound = offset + INTS.loopBound(length);
+        int i = offset;
+        for (; i < bound; i += LANES) {
+            for (int k = 0; k < LANES; k++) {
+                int p = src[i + k];
+                r[k] = LINEAR[(p >> 16) & 0xFF];
+                g[k] = LINEAR[(p >> 8) & 0xFF];
+                b[k] = LINEAR[p & 0xFF];
+            }
+            ((IntVector) FloatVector.fromArray(FLOATS, r, 0).mul(0.2126f)
+                    .add(FloatVector.fromArray(FLOATS, g, 0).mul(0.7152f))
+                    .add(FloatVector.fromArray(FLOATS, b, 0).mul(0.0722f))
+                    .mul(ENCODE_STEPS).add(0.5f)
+                    .convert(VectorOperators.F2I, 0)).intoArray(encoded, 0);
+            for (int k = 0; k < LANES; k++)
+                encoded[k] = ENCODE[encoded[k]];
+            IntVector y = IntVector.fromArray(INTS, encoded, 0);
+            pack(IntVector.fromArray(INTS, src, i).and(0xFF000000), y, y, y)
+                    .intoArray(dst, i);
+        }
+        for (; i < end; i++) {
+            int p = src[i];
+            float y = 0.2126f * LINEAR[(p >> 16) & 0xFF]
+                    + 0.7152f * LINEAR[(p >> 8) & 0xFF]
+                    + 0.0722f * LINEAR[p & 0xFF];
+            int v = ENCODE[(int) (y * ENCODE_STEPS + 0.5f)];
+            dst[i] = (p & 0xFF000000) | (v << 16) | (v << 8) | v;
+        }
+    }
+
+    @Override
+    public void convolve3x3(int[] src, int[] dst, int width, int height,
+                            float[] kernel, int from, int to) {
+        for (int y = from; y < to; y++) {
+            int row = y * width;
+            if (y == 0 || y == height - 1 || width < 3) {
+                System.arraycopy(src, row, dst, row, width);
+                continue;
+            }
+            dst[row] = src[row];
+            dst[row + width - 1] = src[row + width - 1];
+
+            int x = 1;
+            for (; x + LANES <= width - 1; x += LANES) {
+                FloatVector r = FloatVector.zero(FLOATS);
+                FloatVector g = FloatVector.zero(FLOATS);
+                FloatVector b = FloatVector.zero(FLOATS);
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        // ConvolveOp convolves, i.e. the kernel is mirrored
+                        float k = kernel[(1 - dy) * 3 + (1 - dx)];
+                        if (k == 0)
+                            continue;
+                        IntVector p = IntVector.fromArray(INTS, src, row + dy * width + x + dx);
+                        r = channel(p, 16).mul(k).add(r);
+                        g = channel(p, 8).mul(k).add(g);
+                        b = channel(p, 0).mul(k).add(b);
+                    }
+                }
+                pack(IntVector.broadcast(INTS, 0xFF000000), toChannel(r.add(0.5f)),
+                        toChannel(g.add(0.5f)), toChannel(b.add(0.5f)))
+                        .intoArray(dst, row + x);
+            }
+            for (; x < width - 1; x++) {
+                float r = 0.5f, g = 0.5f, b = 0.5f;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        float k = kernel[(1 - dy) * 3 + (1 - dx)];
+                        int p = src[row + dy * width + x + dx];
+                        r += k * ((p >> 16) & 0xFF);
+                        g += k * ((p >> 8) & 0xFF);
+                        b += k * (p & 0xFF);
+                    }
+                }
+                dst[row + x] = 0xFF000000 | (toChannel(r) << 16)
+                        | (toChannel(g) << 8) | toChannel(b);
+            }
+        }
+    }
+
+    private static FloatVector channel(IntVector p, int shift) {
+        return (FloatVector) p.lanewise(VectorOperators.LSHR, shift).and(0xFF)
+                .convert(VectorOperators.I2F, 0);
+    }
+
+    private static IntVector toChannel(FloatVector v) {
+        return (IntVector) v.max(0f).min(255f).convert(VectorOperators.F2I, 0);
+    }
+
+    private static int toChannel(float v) {
+        return (int) clamp(v, 0, 255);
+    }
+
+    private static IntVector pack(IntVector alpha, IntVector r, IntVector g,
+                                  IntVector b) {
+        return alpha.or(r.lanewise(VectorOperators.LSHL, 16))
+                .or(g.lanewise(VectorOperators.LSHL, 8)).or(b);
+    }
+
+    private static IntVector average(IntVector a, IntVector b, IntVector c,
+                                     IntVector d, int shift) {
+        return a.lanewise(VectorOperators.LSHR, shift).and(0xFF)
+                .add(b.lanewise(VectorOperators.LSHR, shift).and(0xFF))
+                .add(c.lanewise(VectorOperators.LSHR, shift).and(0xFF))
+                .add(d.lanewise(VectorOperators.LSHR, shift).and(0xFF))
+                .add(2).lanewise(VectorOperators.LSHR, 2);
+    }
+
+    private static int average(int a, int b, int c, int d, int shift) {
+        return (((a >> shift) & 0xFF) + ((b >> shift) & 0xFF)
+                + ((c >> shift) & 0xFF) + ((d >> shift) & 0xFF) + 2) >> 2;
+    }
+
+    private static IntVector lerp(IntVector p00, IntVector p01, IntVector p10,
+                                  IntVector p11, FloatVector fx, float fy, int shift) {
+        FloatVector c00 = channel(p00, shift);
+        FloatVector c10 = channel(p10, shift);
+        FloatVector top = channel(p01, shift).sub(c00).fma(fx, c00);
+        FloatVector bottom = channel(p11, shift).sub(c10).fma(fx, c10);
+        return toChannel(bottom.sub(top).mul(fy).add(top).add(0.5f));
+    }
+
+    private static int lerp(int p00, int p01, int p10, int p11, float fx,
+                            float fy, int shift) {
+        float c00 = (p00 >> shift) & 0xFF, c01 = (p01 >> shift) & 0xFF;
+        float c10 = (p10 >> shift) & 0xFF, c11 = (p11 >> shift) & 0xFF;
+        float top = c00 + (c01 - c00) * fx;
+        float bottom = c10 + (c11 - c10) * fx;
+        return toChannel(top + (bottom - top) * fy + 0.5f);
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+}